@@ -0,0 +1,41 @@
+package od.configutil.benchmark;
+
+import java.util.ArrayList;
+
+/**
+ * A config bean for benchmarks, which can be serialized by both XStream and java.beans XMLEncoder
+ */
+public class BenchmarkConfig {
+
+    private String name = "benchmarkConfig";
+    private ArrayList<BenchmarkItem> items = new ArrayList<BenchmarkItem>();
+
+    public static BenchmarkConfig createConfig(int itemCount) {
+        BenchmarkConfig config = new BenchmarkConfig();
+        for ( int loop=0; loop < itemCount; loop++) {
+            BenchmarkItem item = new BenchmarkItem();
+            item.setName("item" + loop);
+            item.setDescription("Last Refresh Time for item " + loop);
+            item.setEnabled(loop % 2 == 0);
+            item.setValue(loop * 1.5d);
+            config.getItems().add(item);
+        }
+        return config;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public ArrayList<BenchmarkItem> getItems() {
+        return items;
+    }
+
+    public void setItems(ArrayList<BenchmarkItem> items) {
+        this.items = items;
+    }
+}
@@ -0,0 +1,44 @@
+package od.configutil.benchmark;
+
+/**
+ * An item in a BenchmarkConfig
+ */
+public class BenchmarkItem {
+
+    private String name;
+    private String description;
+    private boolean enabled;
+    private double value;
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    public void setDescription(String description) {
+        this.description = description;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public double getValue() {
+        return value;
+    }
+
+    public void setValue(double value) {
+        this.value = value;
+    }
+}
@@ -0,0 +1,14 @@
+package od.configutil.benchmark;
+
+/**
+ * JVM arguments for benchmark forks
+ */
+public class BenchmarkJvmArgs {
+
+    //xstream 1.3.1 needs reflective access to jdk internals on newer jvms
+    public static final String ADD_OPENS_UTIL = "--add-opens=java.base/java.util=ALL-UNNAMED";
+    public static final String ADD_OPENS_LANG = "--add-opens=java.base/java.lang=ALL-UNNAMED";
+    public static final String ADD_OPENS_REFLECT = "--add-opens=java.base/java.lang.reflect=ALL-UNNAMED";
+    public static final String ADD_OPENS_TEXT = "--add-opens=java.base/java.text=ALL-UNNAMED";
+    public static final String ADD_OPENS_FONT = "--add-opens=java.desktop/java.awt.font=ALL-UNNAMED";
+}
@@ -0,0 +1,26 @@
+package od.configutil.benchmark;
+
+/**
+ * Creates config content of a given size for benchmarks
+ */
+public class ConfigContent {
+
+    /**
+     * @return an xml document of approximately size chars, made up of repeated elements as XStream would produce
+     */
+    public static String createXml(int size) {
+        StringBuilder sb = new StringBuilder(size + 256);
+        sb.append("<list>\n");
+        int loop = 0;
+        while (sb.length() < size) {
+            sb.append("  <od.configutil.benchmark.BenchmarkConfig>\n");
+            sb.append("    <name>config").append(loop).append("</name>\n");
+            sb.append("    <description>Last Refresh Time for item ").append(loop).append("</description>\n");
+            sb.append("    <enabled>").append(loop % 2 == 0).append("</enabled>\n");
+            sb.append("  </od.configutil.benchmark.BenchmarkConfig>\n");
+            loop++;
+        }
+        sb.append("</list>");
+        return sb.toString();
+    }
+}
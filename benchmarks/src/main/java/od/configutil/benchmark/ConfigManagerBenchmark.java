@@ -0,0 +1,124 @@
+package od.configutil.benchmark;
+
+import od.configutil.ConfigCache;
+import od.configutil.ConfigManager;
+import od.configutil.migration.CachingMigrationSource;
+import od.configutil.migration.ClasspathMigrationLoader;
+import od.configutil.serializer.XStreamSeralizer;
+import od.configutil.sinkandsource.ConfigDirectorySourceAndSink;
+import od.configutil.util.ConfigLogImplementation;
+import od.configutil.util.LogMethods;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.*;
+import java.net.URL;
+import java.util.concurrent.TimeUnit;
+
+import static od.configutil.benchmark.BenchmarkJvmArgs.*;
+
+/**
+ * Benchmarks ConfigManager.loadConfig and saveConfig using the default ConfigDirectorySourceAndSink,
+ * for configs at the current version and configs which require migration, with and without a ConfigCache
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = { ADD_OPENS_UTIL, ADD_OPENS_LANG, ADD_OPENS_REFLECT, ADD_OPENS_TEXT, ADD_OPENS_FONT })
+public class ConfigManagerBenchmark {
+
+    public static final String MIGRATIONS_RESOURCE = "/benchmarkMigrations.xml";
+    private static final long OLD_VERSION = 201301010000L;
+
+    @Param({"10", "1000", "10000"})
+    private int itemCount;
+
+    private File configDirectory;
+    private ConfigManager configManager;
+    private ConfigManager cachingConfigManager;
+    private ConfigManager skipUnchangedConfigManager;
+    private BenchmarkConfig config;
+    private LogMethods originalLogMethods;
+
+    @Setup
+    public void setUp() throws Exception {
+        originalLogMethods = ConfigLogImplementation.logMethods;
+        ConfigLogImplementation.setLogMethods(new QuietLogMethods());
+
+        configDirectory = File.createTempFile("configManagerBenchmark", "");
+        configDirectory.delete();
+        configDirectory.mkdir();
+
+        configManager = new ConfigManager(configDirectory);
+        configManager.setMigrationSource(new CachingMigrationSource(new ClasspathMigrationLoader(MIGRATIONS_RESOURCE)));
+        config = BenchmarkConfig.createConfig(itemCount);
+        configManager.saveConfig("current", config);
+        writeOldVersionConfig();
+
+        cachingConfigManager = new ConfigManager(configDirectory);
+        cachingConfigManager.setMigrationSource(configManager.getMigrationSource());
+        cachingConfigManager.setConfigCache(new ConfigCache(10));
+
+        ConfigDirectorySourceAndSink skipUnchangedSink = new ConfigDirectorySourceAndSink(configDirectory);
+        skipUnchangedSink.setSkipUnchanged(true);
+        skipUnchangedConfigManager = new ConfigManager(configDirectory);
+        skipUnchangedConfigManager.setMigrationSource(configManager.getMigrationSource());
+        skipUnchangedConfigManager.setConfigSink(skipUnchangedSink);
+    }
+
+    //write a config at the oldest version, so that all the migrations have to be run when it is loaded
+    private void writeOldVersionConfig() throws Exception {
+        File f = new File(configDirectory, "old." + OLD_VERSION + ".xml");
+        Writer w = new OutputStreamWriter(new FileOutputStream(f), "UTF-8");
+        try {
+            w.write("<!-- configVersion=" + OLD_VERSION + " -->\n");
+            w.write(new XStreamSeralizer().serialize(config).replace("<description>Last Refresh Time", "<description>Last Refresh "));
+        } finally {
+            w.close();
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        File[] files = configDirectory.listFiles();
+        if ( files != null ) {
+            for ( File f : files) {
+                f.delete();
+            }
+        }
+        configDirectory.delete();
+        ConfigLogImplementation.setLogMethods(originalLogMethods);
+    }
+
+    @Benchmark
+    public URL saveConfig() throws Exception {
+        return configManager.saveConfig("saved", config);
+    }
+
+    //saves the same config each time, so the file is only written once
+    @Benchmark
+    public URL saveUnchangedConfig() throws Exception {
+        return skipUnchangedConfigManager.saveConfig("unchanged", config);
+    }
+
+    @Benchmark
+    public BenchmarkConfig loadConfig() throws Exception {
+        return configManager.loadConfig("current", BenchmarkConfig.class);
+    }
+
+    @Benchmark
+    public BenchmarkConfig loadAndMigrateConfig() throws Exception {
+        return configManager.loadConfig("old", BenchmarkConfig.class);
+    }
+
+    @Benchmark
+    public BenchmarkConfig loadCachedConfig() throws Exception {
+        return cachingConfigManager.loadConfig("current", BenchmarkConfig.class);
+    }
+
+    @Benchmark
+    public BenchmarkConfig loadAndMigrateCachedConfig() throws Exception {
+        return cachingConfigManager.loadConfig("old", BenchmarkConfig.class);
+    }
+}
@@ -0,0 +1,111 @@
+package od.configutil.benchmark;
+
+import od.configutil.migration.CombinedRegexMigrationStrategy;
+import od.configutil.migration.ConfigMigrationStategy;
+import od.configutil.migration.RegexMigrationStrategy;
+import od.configutil.migration.StaxMigrationStrategy;
+import od.configutil.migration.XPathMigrationStrategy;
+import od.configutil.migration.XsltMigrationStrategy;
+import od.configutil.serializer.XStreamSeralizer;
+import od.configutil.util.ConfigLogImplementation;
+import od.configutil.util.LogMethods;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+import static od.configutil.benchmark.BenchmarkJvmArgs.*;
+
+/**
+ * Benchmarks each ConfigMigrationStategy on XStream configs of increasing size
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = { ADD_OPENS_UTIL, ADD_OPENS_LANG, ADD_OPENS_REFLECT, ADD_OPENS_TEXT, ADD_OPENS_FONT })
+public class MigrationStrategyBenchmark {
+
+    private static final long VERSION = 201301020000L;
+    //element renames, as find and replace pairs
+    private static final String[] RENAMES = new String[] {
+        "<enabled>", "<active>",
+        "</enabled>", "</active>",
+        "<value>", "<amount>",
+        "</value>", "</amount>",
+        "<description>", "<comment>",
+        "</description>", "</comment>",
+        "od\\.configutil\\.benchmark\\.BenchmarkItem>", "od.configutil.benchmark.Item>",
+        "od\\.configutil\\.benchmark\\.BenchmarkConfig>", "od.configutil.benchmark.Config>"
+    };
+
+    @Param({"10", "1000", "10000"})
+    private int itemCount;
+
+    private String config;
+    private ConfigMigrationStategy regexStrategy;
+    private ConfigMigrationStategy xpathStrategy;
+    private ConfigMigrationStategy xsltStrategy;
+    private ConfigMigrationStategy staxStrategy;
+    private ConfigMigrationStategy[] renameStrategies;
+    private ConfigMigrationStategy combinedRenameStrategy;
+    private LogMethods originalLogMethods;
+
+    @Setup
+    public void setUp() throws Exception {
+        originalLogMethods = ConfigLogImplementation.logMethods;
+        ConfigLogImplementation.setLogMethods(new QuietLogMethods());
+
+        config = new XStreamSeralizer().serialize(BenchmarkConfig.createConfig(itemCount));
+        regexStrategy = new RegexMigrationStrategy(VERSION, new String[] { "Last Refresh\\w", "Last Refresh Time" });
+        //a typical xpath migration changes a single value
+        xpathStrategy = new XPathMigrationStrategy(VERSION, new String[] { "/od.configutil.benchmark.BenchmarkConfig/name/text()", "migratedConfig" });
+        xsltStrategy = new XsltMigrationStrategy(VERSION, new String[] { "/benchmarkMigration.xsl" });
+        //the same change as the xpath migration
+        staxStrategy = new StaxMigrationStrategy(VERSION, new String[] { "replaceText /od.configutil.benchmark.BenchmarkConfig/name migratedConfig" });
+        renameStrategies = new ConfigMigrationStategy[RENAMES.length / 2];
+        for ( int loop = 0; loop < renameStrategies.length; loop++) {
+            renameStrategies[loop] = new RegexMigrationStrategy(VERSION, new String[] { RENAMES[loop * 2], RENAMES[loop * 2 + 1] });
+        }
+        combinedRenameStrategy = new CombinedRegexMigrationStrategy(VERSION, RENAMES);
+    }
+
+    @TearDown
+    public void tearDown() {
+        ConfigLogImplementation.setLogMethods(originalLogMethods);
+    }
+
+    @Benchmark
+    public String regexMigration() {
+        return regexStrategy.migrate("benchmark", config);
+    }
+
+    @Benchmark
+    public String separateRegexRenames() {
+        String result = config;
+        for ( ConfigMigrationStategy s : renameStrategies) {
+            result = s.migrate("benchmark", result);
+        }
+        return result;
+    }
+
+    @Benchmark
+    public String combinedRegexRenames() {
+        return combinedRenameStrategy.migrate("benchmark", config);
+    }
+
+    @Benchmark
+    public String xpathMigration() {
+        return xpathStrategy.migrate("benchmark", config);
+    }
+
+    @Benchmark
+    public String staxMigration() {
+        return staxStrategy.migrate("benchmark", config);
+    }
+
+    @Benchmark
+    public String xsltMigration() {
+        return xsltStrategy.migrate("benchmark", config);
+    }
+}
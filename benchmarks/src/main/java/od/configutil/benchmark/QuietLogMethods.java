@@ -0,0 +1,24 @@
+package od.configutil.benchmark;
+
+import od.configutil.util.LogMethods;
+
+/**
+ * Discards config logging, so that writing to the console is not included in the benchmark timings
+ */
+public class QuietLogMethods implements LogMethods {
+
+    public void info(String s) {
+    }
+
+    public void error(String description, Throwable cause) {
+    }
+
+    public void error(String description) {
+    }
+
+    public void debug(String s) {
+    }
+
+    public void warn(String s) {
+    }
+}
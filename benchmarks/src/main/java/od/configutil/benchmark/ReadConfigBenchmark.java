@@ -0,0 +1,111 @@
+package od.configutil.benchmark;
+
+import od.configutil.sinkandsource.ConfigData;
+import od.configutil.sinkandsource.FileSource;
+import od.configutil.util.ConfigLogImplementation;
+import od.configutil.util.LogMethods;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.*;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares reading a config file through FileSource using the nio path, memory mapped nio, the InputStream path,
+ * and the InputStream path with the original StringBuffer based convertStreamToString
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReadConfigBenchmark {
+
+    private static final long VERSION = 201103201834L;
+
+    @Param({"1024", "102400", "10485760"})
+    private int configSize;
+
+    private File configFile;
+    private SortedSet<Long> versions = new TreeSet<Long>();
+    private FileSource nioSource;
+    private FileSource mappedSource;
+    private FileSource streamSource;
+    private FileSource legacyStreamSource;
+    private LogMethods originalLogMethods;
+
+    @Setup
+    public void setUp() throws IOException {
+        originalLogMethods = ConfigLogImplementation.logMethods;
+        ConfigLogImplementation.setLogMethods(new QuietLogMethods());
+
+        configFile = File.createTempFile("readConfigBenchmark", ".xml");
+        Writer w = new OutputStreamWriter(new FileOutputStream(configFile), "UTF-8");
+        try {
+            w.write("<!-- configVersion=" + VERSION + " -->\n");
+            w.write(ConfigContent.createXml(configSize));
+        } finally {
+            w.close();
+        }
+        versions.add(VERSION);
+
+        nioSource = new FileSource(configFile);
+        mappedSource = new FileSource(configFile);
+        mappedSource.setMemoryMapped(true);
+        streamSource = new FileSource(configFile) {
+            protected File getFile(String configFileName) {
+                return null;
+            }
+        };
+        legacyStreamSource = new FileSource(configFile) {
+            protected File getFile(String configFileName) {
+                return null;
+            }
+
+            //the implementation before the nio read path was added
+            protected String convertStreamToString(BufferedReader br) throws IOException {
+                final int BUF_SIZE = 4096;
+                final char[] BUFFER = new char[BUF_SIZE];
+
+                StringBuffer returnBuffer = new StringBuffer();
+                try {
+                    int bytesRead;
+                    while ((bytesRead = br.read(BUFFER)) != -1) {
+                        returnBuffer.append(new String(BUFFER, 0, bytesRead));
+                    }
+                } finally {
+                    br.close();
+                }
+                return returnBuffer.toString();
+            }
+        };
+    }
+
+    @TearDown
+    public void tearDown() {
+        configFile.delete();
+        ConfigLogImplementation.setLogMethods(originalLogMethods);
+    }
+
+    @Benchmark
+    public ConfigData nioRead() throws Exception {
+        return nioSource.loadConfiguration("benchmark", versions);
+    }
+
+    @Benchmark
+    public ConfigData mappedRead() throws Exception {
+        return mappedSource.loadConfiguration("benchmark", versions);
+    }
+
+    @Benchmark
+    public ConfigData streamRead() throws Exception {
+        return streamSource.loadConfiguration("benchmark", versions);
+    }
+
+    @Benchmark
+    public ConfigData legacyStreamRead() throws Exception {
+        return legacyStreamSource.loadConfiguration("benchmark", versions);
+    }
+}
@@ -0,0 +1,81 @@
+package od.configutil.benchmark;
+
+import od.configutil.serializer.BeanPersistenceSerializer;
+import od.configutil.serializer.BinaryXStreamSerializer;
+import od.configutil.serializer.XStreamSeralizer;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+import static od.configutil.benchmark.BenchmarkJvmArgs.*;
+
+/**
+ * Compares XStreamSeralizer with the dom and xpp drivers, BinaryXStreamSerializer and BeanPersistenceSerializer
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = { ADD_OPENS_UTIL, ADD_OPENS_LANG, ADD_OPENS_REFLECT, ADD_OPENS_TEXT, ADD_OPENS_FONT })
+public class SerializerBenchmark {
+
+    @Param({"10", "1000", "10000"})
+    private int itemCount;
+
+    private BenchmarkConfig config;
+    private XStreamSeralizer xStreamSerializer;
+    private XStreamSeralizer xppSerializer;
+    private BeanPersistenceSerializer beanPersistenceSerializer;
+    private BinaryXStreamSerializer binarySerializer;
+    private String xStreamConfig;
+    private String binaryConfig;
+    private String beanPersistenceConfig;
+
+    @Setup
+    public void setUp() throws Exception {
+        config = BenchmarkConfig.createConfig(itemCount);
+        xStreamSerializer = new XStreamSeralizer();
+        xppSerializer = new XStreamSeralizer(XStreamSeralizer.XmlDriver.XPP);
+        beanPersistenceSerializer = new BeanPersistenceSerializer();
+        xStreamConfig = xStreamSerializer.serialize(config);
+        beanPersistenceConfig = beanPersistenceSerializer.serialize(config);
+        binarySerializer = new BinaryXStreamSerializer();
+        binaryConfig = binarySerializer.serialize(config);
+    }
+
+    @Benchmark
+    public String xStreamSerialize() throws Exception {
+        return xStreamSerializer.serialize(config);
+    }
+
+    @Benchmark
+    public BenchmarkConfig xStreamDeserialize() throws Exception {
+        return xStreamSerializer.deserialize(xStreamConfig, BenchmarkConfig.class);
+    }
+
+    @Benchmark
+    public BenchmarkConfig xppDeserialize() throws Exception {
+        return xppSerializer.deserialize(xStreamConfig, BenchmarkConfig.class);
+    }
+
+    @Benchmark
+    public String binarySerialize() throws Exception {
+        return binarySerializer.serialize(config);
+    }
+
+    @Benchmark
+    public BenchmarkConfig binaryDeserialize() throws Exception {
+        return binarySerializer.deserialize(binaryConfig, BenchmarkConfig.class);
+    }
+
+    @Benchmark
+    public String beanPersistenceSerialize() throws Exception {
+        return beanPersistenceSerializer.serialize(config);
+    }
+
+    @Benchmark
+    public BenchmarkConfig beanPersistenceDeserialize() throws Exception {
+        return beanPersistenceSerializer.deserialize(beanPersistenceConfig, BenchmarkConfig.class);
+    }
+}
@@ -0,0 +1,238 @@
+package od.configutil;
+
+import od.configutil.serializer.ConfigSerializer;
+import od.configutil.util.ContentDigest;
+
+import java.io.*;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded cache of deserialized configs for ConfigManager, see ConfigManager#setConfigCache
+ *
+ * When a cache is set, ConfigManager still reads the saved config each time it is loaded, but if the config content
+ * is unchanged since the config was last deserialized, the cached config is returned rather than migrating and
+ * deserializing it again.
+ *
+ * One config is cached for each configName, config class and serializer, together with a digest of the saved content,
+ * its saved version and the version it was migrated to. The least recently used configs are evicted once maxEntries is reached.
+ *
+ * By default the cached instance is returned to every caller, so callers must not modify it. If configs may be
+ * modified, supply a CopyStrategy, such as SERIALIZATION_COPY, to return a copy of the cached config, or a strategy
+ * which returns an immutable view for config classes which support one
+ */
+public class ConfigCache {
+
+    /**
+     * Return the cached config instance itself
+     */
+    public static final CopyStrategy SHARED = new CopyStrategy() {
+        public <V> V copy(V config) {
+            return config;
+        }
+    };
+
+    /**
+     * Return a deep copy of the cached config made using Java serialization, configs must be Serializable
+     */
+    public static final CopyStrategy SERIALIZATION_COPY = new CopyStrategy() {
+        public <V> V copy(V config) throws Exception {
+            ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            ObjectOutputStream oos = new ObjectOutputStream(bos);
+            oos.writeObject(config);
+            oos.close();
+
+            ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(bos.toByteArray()));
+            try {
+                //the copy has the same class as the config
+                @SuppressWarnings("unchecked")
+                V copy = (V)ois.readObject();
+                return copy;
+            } finally {
+                ois.close();
+            }
+        }
+    };
+
+    private final int maxEntries;
+    private final CopyStrategy copyStrategy;
+    private final Map<CacheKey, CacheEntry> entries;
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong evictionCount = new AtomicLong();
+
+    public ConfigCache(int maxEntries) {
+        this(maxEntries, SHARED);
+    }
+
+    public ConfigCache(int maxEntries, CopyStrategy copyStrategy) {
+        this.maxEntries = maxEntries;
+        this.copyStrategy = copyStrategy;
+        this.entries = new LinkedHashMap<CacheKey, CacheEntry>(16, 0.75f, true) {
+            protected boolean removeEldestEntry(Map.Entry<CacheKey, CacheEntry> eldest) {
+                boolean evict = size() > ConfigCache.this.maxEntries;
+                if ( evict ) {
+                    evictionCount.incrementAndGet();
+                }
+                return evict;
+            }
+        };
+    }
+
+    /**
+     * @return a copy of the cached config, according to the CopyStrategy, or null if the config with this content
+     * is not cached
+     */
+    <V> V get(String configName, Class<V> configClass, ConfigSerializer serializer, long version, long migratedVersion, ContentDigest contentDigest) throws Exception {
+        CacheEntry entry;
+        synchronized (this) {
+            entry = entries.get(new CacheKey(configName, configClass, serializer));
+        }
+
+        V result = null;
+        if ( entry != null && entry.isFor(version, migratedVersion, contentDigest)) {
+            hitCount.incrementAndGet();
+            result = copyStrategy.copy(configClass.cast(entry.config));
+        } else {
+            missCount.incrementAndGet();
+        }
+        return result;
+    }
+
+    /**
+     * Cache a newly deserialized config
+     * @return a copy of the config, according to the CopyStrategy, to return to the caller
+     */
+    <V> V put(String configName, Class<V> configClass, ConfigSerializer serializer, long version, long migratedVersion, ContentDigest contentDigest, V config) throws Exception {
+        CacheEntry entry = new CacheEntry(version, migratedVersion, contentDigest, config);
+        synchronized (this) {
+            entries.put(new CacheKey(configName, configClass, serializer), entry);
+        }
+        return copyStrategy.copy(config);
+    }
+
+    /**
+     * Remove any cached configs with this configName
+     */
+    public synchronized void remove(String configName) {
+        Iterator<CacheKey> i = entries.keySet().iterator();
+        while (i.hasNext()) {
+            if ( i.next().configName.equals(configName)) {
+                i.remove();
+            }
+        }
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    public long getEvictionCount() {
+        return evictionCount.get();
+    }
+
+    /**
+     * @return the proportion of loads which returned a cached config, or 0 if there have been no loads
+     */
+    public double getHitRate() {
+        long hits = hitCount.get();
+        long total = hits + missCount.get();
+        return total == 0 ? 0 : (double)hits / total;
+    }
+
+    public void resetStatistics() {
+        hitCount.set(0);
+        missCount.set(0);
+        evictionCount.set(0);
+    }
+
+    public String toString() {
+        return "ConfigCache{" +
+            "size=" + size() +
+            ", maxEntries=" + maxEntries +
+            ", hits=" + hitCount +
+            ", misses=" + missCount +
+            ", evictions=" + evictionCount +
+            '}';
+    }
+
+    /**
+     * Determines what is returned to the caller for a cached config
+     */
+    public interface CopyStrategy {
+        <V> V copy(V config) throws Exception;
+    }
+
+    private static class CacheEntry {
+        private final long version;
+        private final long migratedVersion;
+        private final ContentDigest contentDigest;
+        private final Object config;
+
+        private CacheEntry(long version, long migratedVersion, ContentDigest contentDigest, Object config) {
+            this.version = version;
+            this.migratedVersion = migratedVersion;
+            this.contentDigest = contentDigest;
+            this.config = config;
+        }
+
+        //the config must be migrated again if the migrations have changed the latest version
+        private boolean isFor(long version, long migratedVersion, ContentDigest contentDigest) {
+            return this.version == version && this.migratedVersion == migratedVersion && this.contentDigest.equals(contentDigest);
+        }
+    }
+
+    private static class CacheKey {
+        private final String configName;
+        private final Class<?> configClass;
+        private final ConfigSerializer serializer;
+
+        private CacheKey(String configName, Class<?> configClass, ConfigSerializer serializer) {
+            this.configName = configName;
+            this.configClass = configClass;
+            this.serializer = serializer;
+        }
+
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof CacheKey)) return false;
+
+            CacheKey cacheKey = (CacheKey) o;
+
+            if (!configName.equals(cacheKey.configName)) return false;
+            if (configClass != cacheKey.configClass) return false;
+            if (serializer != cacheKey.serializer) return false;
+
+            return true;
+        }
+
+        public int hashCode() {
+            int result = configName.hashCode();
+            result = 29 * result + configClass.hashCode();
+            result = 29 * result + System.identityHashCode(serializer);
+            return result;
+        }
+
+        public String toString() {
+            return configName + "/" + configClass.getName();
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package od.configutil;
+
+/**
+ * Receives a newly loaded config when the saved config changes
+ * @see ConfigManager#addConfigListener
+ */
+public interface ConfigListener<V> {
+
+    /**
+     * Called on ConfigManager's watcher thread once the changed config has been migrated and deserialized
+     */
+    void configChanged(String configName, V config);
+}
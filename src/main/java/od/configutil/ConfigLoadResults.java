@@ -0,0 +1,65 @@
+package od.configutil;
+
+import od.configutil.util.ConfigManagerException;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The configs loaded by ConfigManager.loadConfigs, and the failure for each config which could not be loaded
+ * @see ConfigManager#loadConfigs
+ */
+public class ConfigLoadResults {
+
+    private final Map<String, Object> configs = new LinkedHashMap<String, Object>();
+    private final Map<String, ConfigManagerException> failures = new LinkedHashMap<String, ConfigManagerException>();
+
+    void addConfig(String configName, Object config) {
+        configs.put(configName, config);
+    }
+
+    void addFailure(String configName, ConfigManagerException failure) {
+        failures.put(configName, failure);
+    }
+
+    /**
+     * @return the loaded config with configName, or null if it failed to load
+     */
+    public <V> V getConfig(String configName, Class<V> configClass) {
+        return configClass.cast(configs.get(configName));
+    }
+
+    /**
+     * @return the exception which caused the config with configName to fail to load, or null if it was loaded.
+     * A NoConfigFoundException if there is no saved config
+     */
+    public ConfigManagerException getFailure(String configName) {
+        return failures.get(configName);
+    }
+
+    /**
+     * @return the loaded configs by configName, in the order the config names were supplied
+     */
+    public Map<String, Object> getConfigs() {
+        return Collections.unmodifiableMap(configs);
+    }
+
+    /**
+     * @return the exception for each config which failed to load, by configName
+     */
+    public Map<String, ConfigManagerException> getFailures() {
+        return Collections.unmodifiableMap(failures);
+    }
+
+    /**
+     * @return true if every config was loaded
+     */
+    public boolean isSuccessful() {
+        return failures.isEmpty();
+    }
+
+    public String toString() {
+        return "ConfigLoadResults{loaded=" + configs.keySet() + ", failed=" + failures.keySet() + "}";
+    }
+}
@@ -1,19 +1,29 @@
 package od.configutil;
 
+import od.configutil.metrics.ConfigMetricsImplementation;
+import od.configutil.metrics.ConfigPhase;
 import od.configutil.migration.*;
 import od.configutil.serializer.ConfigSerializer;
+import od.configutil.serializer.MigratableConfigSerializer;
+import od.configutil.serializer.StreamingConfigSerializer;
 import od.configutil.serializer.XStreamSeralizer;
-import od.configutil.sinkandsource.ConfigData;
-import od.configutil.sinkandsource.ConfigDirectorySourceAndSink;
-import od.configutil.sinkandsource.ConfigSink;
-import od.configutil.sinkandsource.ConfigSource;
+import od.configutil.sinkandsource.*;
 import od.configutil.util.ConfigLogImplementation;
 import od.configutil.util.ConfigManagerException;
+import od.configutil.util.ContentDigest;
 
 import javax.swing.*;
 import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.lang.reflect.Method;
 import java.net.URL;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Function;
 
 /**
  * ConfigManager is a utility for loading and saving config files, which also supports config file versioning and
@@ -26,6 +36,8 @@ import java.util.*;
  * When saving a config, the ConfigManager expects to receive a Java class instance representing config data
  * The bean will then be serialized to a String value using the configured ConfigSerializer (this may perform serialization
  * to XML using XStream, for example). The serialized config data will then be written to the ConfigSink
+ * If the ConfigSerializer is a StreamingConfigSerializer and the ConfigSink is a StreamingConfigSink (as the
+ * default serializers and sinks are) the config is serialized directly to the sink without creating a String
  *
  * ConfigManager also handles config versions and can migrate older configs to bring them up to date for a newer config
  * version. Associated with ConfigManager is a migrationSource. This defines a list of Config Migrations each of which
@@ -59,13 +71,52 @@ import java.util.*;
  * while the suffix is comprised of the latest version id and a file extension. DirectorySink may therefore end up writing a
  * directory containing newer and older config files under several different config names. When configs are loaded from a
  * DirectorySouce, typically only the most recent config file for the given configName is loaded.
+ *
+ * ConfigManager may be used concurrently from several threads, provided the source, sink, migration source and
+ * serializer are thread safe, as the defaults are. Config migrations are cached and read without locking, and
+ * the default ConfigDirectorySourceAndSink locks per configName, so saves and loads of different configs do not contend
+ *
+ * Rather than polling by calling loadConfig repeatedly, a ConfigListener may be added for a configName. ConfigManager
+ * watches the config directory or file for changes, and when the saved config changes the listener receives
+ * the newly loaded config
+ *
+ * If the same configs are loaded repeatedly, a ConfigCache may be set. The saved config is still read on each load,
+ * but unchanged configs are not migrated and deserialized again
+ *
+ * Several configs may be loaded concurrently with loadConfigs, which returns the configs loaded and the failure for
+ * each config which could not be loaded
+ *
+ * loadConfigAsync and saveConfigAsync load and save a config on the async executor, and return a CompletableFuture.
+ * saveConfigAsync serializes the config on the calling thread, and only the write is made on the async executor.
+ * Async saves to the same configName are made in the order they were requested, and an async load waits for any
+ * async save to the same configName requested before it
+ *
+ * Configs may be saved in a compact binary format by setting a BinaryXStreamSerializer. A MigratableConfigSerializer
+ * converts its configs to XML before they are migrated, so the same migrations apply to XML and binary configs
+ *
+ * The first load does the one off work of loading the config migrations and initialising the serializer. Call warmUp
+ * once the ConfigManager is configured to do this on a background thread, a load or save started while the warm up is
+ * in progress waits for it to complete rather than repeating it
+ *
+ * The time taken by each phase of loading and saving configs, and other counts, are passed to the ConfigMetrics set
+ * with ConfigMetricsImplementation.setConfigMetrics. By default they are not recorded. A streamed load records
+ * reading the config as part of DESERIALIZE, and a streamed save records serializing it as part of WRITE, see ConfigPhase
  */
 public class ConfigManager {
 
-    private ConfigSource configSource;
-    private ConfigSink configSink;
-    private MigrationSource migrationSource;
-    private ConfigSerializer configSerializer;
+    private volatile ConfigSource configSource;
+    private volatile ConfigSink configSink;
+    private volatile MigrationSource migrationSource;
+    private volatile ConfigSerializer configSerializer;
+    private final MigrationPlanCache migrationPlanCache = new MigrationPlanCache();
+    private final ConfigWatcher configWatcher = new ConfigWatcher(this);
+    private volatile ConfigCache configCache;
+    private volatile ExecutorService bulkLoadExecutor;
+    private volatile Executor asyncExecutor;
+    private ExecutorService defaultAsyncExecutor;
+    //the last async save requested for each configName which has not yet completed
+    private final Map<String, CompletableFuture<URL>> pendingAsyncSaves = new HashMap<String, CompletableFuture<URL>>();
+    private volatile CompletableFuture<Void> warmUpFuture;
 
     public ConfigManager() {
         setDefaultMigrationSource();
@@ -80,9 +131,11 @@ public class ConfigManager {
     }
 
     protected void setDefaultMigrationSource() {
-        this.migrationSource = new AggregatedURLMigrationLoader(
-            new ClasspathMigrationLoader(),
-            new SysPropertyURLMigrationLoader()
+        this.migrationSource = new CachingMigrationSource(
+            new AggregatedURLMigrationLoader(
+                new ClasspathMigrationLoader(),
+                new SysPropertyURLMigrationLoader()
+            )
         );
     }
 
@@ -144,10 +197,326 @@ public class ConfigManager {
         }
     }
 
+    /**
+     * Load several configs of the same class concurrently
+     * @see #loadConfigs(Map)
+     */
+    public ConfigLoadResults loadConfigs(Collection<String> configNames, Class<?> configClass) throws ConfigManagerException {
+        Map<String, Class<?>> configClassesByName = new LinkedHashMap<String, Class<?>>();
+        for ( String configName : configNames) {
+            configClassesByName.put(configName, configClass);
+        }
+        return loadConfigs(configClassesByName);
+    }
+
+    /**
+     * Load several configs concurrently using the configSource and configSerializer registered with configManager,
+     * and migrate them to the latest patch level. The config migrations are read once for the whole batch.
+     *
+     * The configs are loaded using the bulk load executor if one is set, otherwise using a virtual thread per config
+     * where the runtime supports them, or else a pool of threads created for the batch.
+     * A config which fails to load does not prevent the others loading, its failure is returned in the results
+     * (unlike loadConfig, no dialog is shown to the user)
+     *
+     * @param configClassesByName the class of config to load for each configName
+     * @throws ConfigManagerException, if the config migrations could not be read, or the thread is interrupted
+     * while waiting for the configs to load
+     */
+    public ConfigLoadResults loadConfigs(Map<String, ? extends Class<?>> configClassesByName) throws ConfigManagerException {
+        final ConfigSource configSource = this.configSource;
+        final ConfigSerializer serializer = this.configSerializer;
+        final SortedMap<Long, List<ConfigMigrationStategy>> configMigrations;
+        try {
+            configMigrations = readConfigMigrations();
+        } catch (ConfigManagerException t) {
+            throw t;
+        } catch (Throwable t) {
+            throw new ConfigManagerException("Failed to read config migrations during ConfigManger.loadConfigs", t);
+        }
+
+        List<String> configNames = new ArrayList<String>();
+        List<Callable<Object>> loads = new ArrayList<Callable<Object>>();
+        for ( final Map.Entry<String, ? extends Class<?>> entry : configClassesByName.entrySet()) {
+            configNames.add(entry.getKey());
+            loads.add(new Callable<Object>() {
+                public Object call() throws Exception {
+                    return doLoad(entry.getKey(), serializer, entry.getValue(), configSource, configMigrations);
+                }
+            });
+        }
+
+        ExecutorService executor = this.bulkLoadExecutor;
+        boolean createdExecutor = executor == null;
+        if ( createdExecutor ) {
+            executor = createBulkLoadExecutor(loads.size());
+        }
+
+        ConfigLoadResults results = new ConfigLoadResults();
+        try {
+            List<Future<Object>> futures = executor.invokeAll(loads);
+            for ( int loop = 0; loop < futures.size(); loop++) {
+                String configName = configNames.get(loop);
+                try {
+                    results.addConfig(configName, futures.get(loop).get());
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    ConfigLogImplementation.logMethods.error("Failed to load config " + configName, cause);
+                    results.addFailure(configName, cause instanceof ConfigManagerException ?
+                        (ConfigManagerException)cause :
+                        new ConfigManagerException("Failed during ConfigManger.loadConfigs", cause)
+                    );
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ConfigManagerException("Interrupted during ConfigManger.loadConfigs", e);
+        } finally {
+            if ( createdExecutor ) {
+                executor.shutdownNow();
+            }
+        }
+        return results;
+    }
+
+    private static ExecutorService createBulkLoadExecutor(int configCount) {
+        ExecutorService result = null;
+        try {
+            Method newVirtualThreadExecutor = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            result = (ExecutorService)newVirtualThreadExecutor.invoke(null);
+        } catch (NoSuchMethodException e) {
+            //virtual threads are not supported before Java 21
+        } catch (Exception e) {
+            ConfigLogImplementation.logMethods.warn("Could not create virtual thread executor to load configs, " + e);
+        }
+
+        if ( result == null ) {
+            int threadCount = Math.max(1, Math.min(configCount, Runtime.getRuntime().availableProcessors() * 2));
+            result = Executors.newFixedThreadPool(threadCount, new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "ConfigManager-loadConfigs");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        }
+        return result;
+    }
+
+    /**
+     * Load a config on the async executor using the configSource and configSerializer registered with configManager
+     * @see #loadConfigAsync(String, Class, ConfigSource, ConfigSerializer)
+     */
+    public <V> CompletableFuture<V> loadConfigAsync(String configName, Class<V> configClass) {
+        return loadConfigAsync(configName, configClass, this.configSource, this.configSerializer);
+    }
+
+    /**
+     * Load a config on the async executor, once any async save to the same configName has completed
+     * @return a future which completes with the config at the latest patch level, or exceptionally with a
+     * ConfigManagerException if the config could not be loaded (unlike loadConfig, no dialog is shown to the user)
+     */
+    public <V> CompletableFuture<V> loadConfigAsync(final String configName, final Class<V> configClass, final ConfigSource configSource, final ConfigSerializer serializer) {
+        CompletableFuture<URL> pendingSave;
+        synchronized (pendingAsyncSaves) {
+            pendingSave = pendingAsyncSaves.get(configName);
+        }
+        return afterCompletion(pendingSave).thenApplyAsync(new Function<Object, V>() {
+            public V apply(Object ignored) {
+                try {
+                    return doLoad(configName, serializer, configClass, configSource);
+                } catch (ConfigManagerException t) {
+                    throw new CompletionException(t);
+                } catch (Throwable t) {
+                    throw new CompletionException(new ConfigManagerException("Failed during ConfigManger.loadConfigAsync", t));
+                }
+            }
+        }, getOrCreateAsyncExecutor());
+    }
+
+    /**
+     * Save a config on the async executor using the configSink and configSerializer registered with configManager
+     * @see #saveConfigAsync(String, Object, ConfigSink, ConfigSerializer)
+     */
+    public CompletableFuture<URL> saveConfigAsync(String configName, Object config) {
+        return saveConfigAsync(configName, config, this.configSink, this.configSerializer);
+    }
+
+    /**
+     * Save a config on the async executor, after any async save to the same configName requested before it,
+     * so that a later save is never overwritten by an earlier one. A failed save does not prevent later saves
+     *
+     * The config is serialized on the calling thread, and only written on the async executor, so the config may be
+     * modified as soon as this method returns, and changes made after it returns are not saved
+     *
+     * @return a future which completes with a URL to the saved config file, or exceptionally with a
+     * ConfigManagerException if the save failed
+     */
+    public CompletableFuture<URL> saveConfigAsync(final String configName, Object config, final ConfigSink configSink, ConfigSerializer serializer) {
+        final long serializeNanos;
+        final String serializedConfig;
+        try {
+            long startTime = System.nanoTime();
+            serializedConfig = serializer.serialize(config);
+            serializeNanos = System.nanoTime() - startTime;
+            ConfigMetricsImplementation.metrics.recordTime(ConfigPhase.SERIALIZE, configName, serializeNanos);
+        } catch (Throwable t) {
+            ConfigMetricsImplementation.metrics.recordFailure(ConfigPhase.SAVE, configName, t);
+            CompletableFuture<URL> failed = new CompletableFuture<URL>();
+            failed.completeExceptionally(new ConfigManagerException("Failed during ConfigManger.saveConfigAsync", t));
+            return failed;
+        }
+
+        synchronized (pendingAsyncSaves) {
+            final CompletableFuture<URL> save = afterCompletion(pendingAsyncSaves.get(configName)).thenApplyAsync(new Function<Object, URL>() {
+                public URL apply(Object ignored) {
+                    try {
+                        return doWrite(configName, serializedConfig, serializeNanos, configSink);
+                    } catch (ConfigManagerException t) {
+                        throw new CompletionException(t);
+                    } catch (Throwable t) {
+                        throw new CompletionException(new ConfigManagerException("Failed during ConfigManger.saveConfigAsync", t));
+                    }
+                }
+            }, getOrCreateAsyncExecutor());
+
+            pendingAsyncSaves.put(configName, save);
+            save.whenComplete(new BiConsumer<URL, Throwable>() {
+                public void accept(URL url, Throwable t) {
+                    synchronized (pendingAsyncSaves) {
+                        if ( pendingAsyncSaves.get(configName) == save ) {
+                            pendingAsyncSaves.remove(configName);
+                        }
+                    }
+                }
+            });
+            return save;
+        }
+    }
+
+    //@return a future which completes, successfully, once the future supplied has completed
+    private static CompletableFuture<Object> afterCompletion(CompletableFuture<?> future) {
+        CompletableFuture<Object> result;
+        if ( future == null ) {
+            result = CompletableFuture.completedFuture(null);
+        } else {
+            result = future.handle(new BiFunction<Object, Throwable, Object>() {
+                public Object apply(Object o, Throwable t) {
+                    return null;
+                }
+            });
+        }
+        return result;
+    }
+
+    private Executor getOrCreateAsyncExecutor() {
+        Executor result = this.asyncExecutor;
+        if ( result == null ) {
+            synchronized (pendingAsyncSaves) {
+                if ( defaultAsyncExecutor == null ) {
+                    int threadCount = Math.max(2, Runtime.getRuntime().availableProcessors());
+                    ThreadPoolExecutor executor = new ThreadPoolExecutor(threadCount, threadCount, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                        public Thread newThread(Runnable r) {
+                            Thread t = new Thread(r, "ConfigManager-async");
+                            t.setDaemon(true);
+                            return t;
+                        }
+                    });
+                    //threads stop when the executor is idle, so an unused ConfigManager does not keep them
+                    executor.allowCoreThreadTimeOut(true);
+                    defaultAsyncExecutor = executor;
+                }
+                result = defaultAsyncExecutor;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Warm up the config migrations, without warming up the serializer for any config classes
+     * @see #warmUp(Map)
+     */
+    public CompletableFuture<Void> warmUp() {
+        return warmUp(Collections.<String, Class<?>>emptyMap());
+    }
+
+    /**
+     * Start a background thread which does the work otherwise done by the first load, so that it is not on the
+     * critical path of application startup:
+     * the config migrations are loaded and the migration plans compiled, and the serializer is warmed up for the config
+     * classes if it is an XStreamSeralizer.
+     * The config source is not changed, to index a ConfigDirectorySourceAndSink call its setIndexed method.
+     *
+     * This should be called once the ConfigManager is configured. Loads and saves wait for the warm up to complete.
+     * Only one warm up is made, if warmUp is called again while a warm up is in progress or after it has succeeded the
+     * same future is returned, and the configClassesByName supplied are ignored. A warm up which failed may be retried
+     *
+     * @param configClassesByName the class of config which will be loaded for each configName
+     * @return a future which completes when the warm up is finished, or exceptionally with a ConfigManagerException if
+     * the warm up failed. A failed warm up does not prevent configs loading
+     */
+    public synchronized CompletableFuture<Void> warmUp(Map<String, ? extends Class<?>> configClassesByName) {
+        CompletableFuture<Void> existing = warmUpFuture;
+        if ( existing != null && ! existing.isCompletedExceptionally()) {
+            ConfigLogImplementation.logMethods.debug("ConfigManager warm up has already been started");
+            return existing;
+        }
+
+        final Map<String, Class<?>> configClasses = new LinkedHashMap<String, Class<?>>(configClassesByName);
+        final ConfigSerializer serializer = this.configSerializer;
+        final CompletableFuture<Void> result = new CompletableFuture<Void>();
+        //a thread of its own, so that the warm up cannot queue behind loads on a shared executor which wait for it
+        Thread warmUpThread = new Thread("ConfigManager-warmUp") {
+            public void run() {
+                try {
+                    doWarmUp(configClasses, serializer);
+                    result.complete(null);
+                } catch (ConfigManagerException t) {
+                    ConfigLogImplementation.logMethods.error("Failed to warm up ConfigManager", t);
+                    result.completeExceptionally(t);
+                } catch (Throwable t) {
+                    ConfigLogImplementation.logMethods.error("Failed to warm up ConfigManager", t);
+                    result.completeExceptionally(new ConfigManagerException("Failed during ConfigManger.warmUp", t));
+                }
+            }
+        };
+        warmUpThread.setDaemon(true);
+        warmUpFuture = result;
+        warmUpThread.start();
+        return result;
+    }
+
+    private void doWarmUp(Map<String, Class<?>> configClassesByName, ConfigSerializer serializer) throws Exception {
+        long startTime = System.currentTimeMillis();
+        SortedMap<Long, List<ConfigMigrationStategy>> configMigrations = loadConfigMigrations();
+        for ( Long version : configMigrations.keySet()) {
+            migrationPlanCache.getMigrationPlan(configMigrations, version);
+        }
+
+        if ( serializer instanceof XStreamSeralizer ) {
+            Set<Class<?>> configClasses = new LinkedHashSet<Class<?>>(configClassesByName.values());
+            ((XStreamSeralizer)serializer).warmUp(configClasses.toArray(new Class<?>[configClasses.size()]));
+        }
+        ConfigLogImplementation.logMethods.info("ConfigManager warm up completed in " + (System.currentTimeMillis() - startTime) + "ms");
+    }
+
+    //a load or save started during a warm up waits for it, rather than repeating the work
+    private void awaitWarmUp() {
+        CompletableFuture<Void> warmUp = this.warmUpFuture;
+        if ( warmUp != null && ! warmUp.isDone()) {
+            ConfigLogImplementation.logMethods.debug("Waiting for ConfigManager warm up to complete");
+            try {
+                warmUp.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                //the failure was logged by the warm up, the load or save will report it if it fails in the same way
+            }
+        }
+    }
 
     /**
      * Save the config using the name provided and configSink registered with configManager
-     * @return a URL to the saved config file
+     * @return a URL to the saved config file, which may not exist yet if the sink is a ConfigDirectorySourceAndSink in write behind mode
      * @throws ConfigManagerException, if the save failed
      */
     public URL saveConfig(String configName, Object config) throws ConfigManagerException {
@@ -156,7 +525,7 @@ public class ConfigManager {
 
      /**
      * Save the config using the name and serializer provided, and the configSink registered with configManager
-     * @return a URL to the saved config file
+     * @return a URL to the saved config file, which may not exist yet if the sink is a ConfigDirectorySourceAndSink in write behind mode
      * @throws ConfigManagerException, if the save failed
      */
     public URL saveConfig(String configName, Object config, ConfigSerializer serializer) throws ConfigManagerException {
@@ -165,7 +534,7 @@ public class ConfigManager {
 
      /**
      * Save the config using the name and serializer provided, and the configSink registered with configManager
-     * @return a URL to the saved config file
+     * @return a URL to the saved config file, which may not exist yet if the sink is a ConfigDirectorySourceAndSink in write behind mode
      * @throws ConfigManagerException, if the save failed
      */
     public URL saveConfig(String configName, Object config, ConfigSink configSink) throws ConfigManagerException {
@@ -175,7 +544,7 @@ public class ConfigManager {
 
     /**
      * Save the config using the name and serializer provided, and the configSink registered with configManager
-     * @return a URL to the saved config file
+     * @return a URL to the saved config file, which may not exist yet if the sink is a ConfigDirectorySourceAndSink in write behind mode
      * @throws ConfigManagerException, if the save failed
      */
     public URL saveConfig(String configName, Object config, ConfigSink configSink, ConfigSerializer serializer) throws ConfigManagerException {
@@ -188,29 +557,213 @@ public class ConfigManager {
         }
     }
 
-    private <V> V doLoad(String configName, ConfigSerializer serializer, Class<V> configClass, ConfigSource configSource) throws Exception {
+    /**
+     * Add a listener to be notified when the config with configName changes, using the configSource and
+     * configSerializer registered with configManager when the listener is added
+     *
+     * The config source must be a ConfigDirectorySourceAndSink, which is watched using a WatchService, or a FileSource,
+     * which is checked periodically for a change to the file's last modified time.
+     * Bursts of file changes are debounced, and listeners are only notified if the saved config content has changed,
+     * in which case the config is migrated and deserialized once for each config class and serializer listened with.
+     * This includes changes saved by this ConfigManager.
+     *
+     * Listeners are notified on a watcher thread, one listener at a time
+     *
+     * @throws ConfigManagerException, if the config source cannot be watched
+     */
+    public <V> void addConfigListener(String configName, Class<V> configClass, ConfigListener<? super V> listener) throws ConfigManagerException {
+        configWatcher.addListener(configName, configClass, listener, this.configSource, this.configSerializer);
+    }
+
+    /**
+     * Remove a listener, the config stops being watched once its last listener is removed
+     */
+    public void removeConfigListener(String configName, ConfigListener<?> listener) {
+        configWatcher.removeListener(configName, listener);
+    }
+
+    /**
+     * @param debounceMillis the time to wait after a config file changes before checking the config, so that a burst
+     * of changes is checked once. Default is 500ms
+     */
+    public void setConfigListenerDebounceTime(long debounceMillis) {
+        configWatcher.setDebounceMillis(debounceMillis);
+    }
+
+    public long getConfigListenerDebounceTime() {
+        return configWatcher.getDebounceMillis();
+    }
+
+    /**
+     * @param pollIntervalMillis interval between checks on the last modified time of a watched FileSource. Default is 1000ms
+     */
+    public void setConfigListenerPollInterval(long pollIntervalMillis) {
+        configWatcher.setPollIntervalMillis(pollIntervalMillis);
+    }
+
+    public long getConfigListenerPollInterval() {
+        return configWatcher.getPollIntervalMillis();
+    }
+
+    /**
+     * Load the serialized config without migrating or deserializing it
+     * @return the ConfigData, or null if there is no config
+     */
+    ConfigData loadConfigData(String configName, ConfigSource configSource) throws Exception {
         SortedMap<Long, List<ConfigMigrationStategy>> configMigrations = readConfigMigrations();
+        return configSource.loadConfiguration(configName, new TreeSet<Long>(configMigrations.keySet()));
+    }
+
+    <V> V migrateAndDeserialize(ConfigData configData, Class<V> configClass, ConfigSerializer serializer) throws Exception {
+        ConfigData d = patchConfig(readConfigMigrations(), configData, serializer);
+        return serializer.deserialize(d.getSerializedConfig(), configClass);
+    }
+
+    private <V> V doLoad(String configName, ConfigSerializer serializer, Class<V> configClass, ConfigSource configSource) throws Exception {
+        return doLoad(configName, serializer, configClass, configSource, readConfigMigrations());
+    }
+
+    private <V> V doLoad(String configName, ConfigSerializer serializer, Class<V> configClass, ConfigSource configSource, SortedMap<Long, List<ConfigMigrationStategy>> configMigrations) throws Exception {
+        long startTime = System.nanoTime();
+        try {
+            V result = loadFromSource(configName, serializer, configClass, configSource, configMigrations);
+            recordTime(ConfigPhase.LOAD, configName, startTime);
+            return result;
+        } catch (Exception e) {
+            ConfigMetricsImplementation.metrics.recordFailure(ConfigPhase.LOAD, configName, e);
+            throw e;
+        }
+    }
+
+    private <V> V loadFromSource(String configName, ConfigSerializer serializer, Class<V> configClass, ConfigSource configSource, SortedMap<Long, List<ConfigMigrationStategy>> configMigrations) throws Exception {
         SortedSet<Long> migrationVersions = new TreeSet<Long>(configMigrations.keySet());
 
-        //this should throw an exception if an error occurs, null indicates config not found
-        ConfigData d = configSource.loadConfiguration(configName, migrationVersions);
+        ConfigCache cache = this.configCache;
+        if ( cache != null ) {
+            return doCachedLoad(configName, serializer, configClass, configSource, configMigrations, cache);
+        } else if ( configSource instanceof StreamingConfigSource && serializer instanceof StreamingConfigSerializer) {
+            //this should throw an exception if an error occurs, null indicates config not found
+            V config = ((StreamingConfigSource)configSource).loadConfiguration(
+                configName,
+                migrationVersions,
+                new StreamingConfigReader<V>(configMigrations, (StreamingConfigSerializer)serializer, configClass)
+            );
+            if ( config == null ) {
+                throw new NoConfigFoundException("Could not find a config to load");
+            }
+            return config;
+        } else {
+            //this should throw an exception if an error occurs, null indicates config not found
+            ConfigData d = readConfigData(configName, configSource, migrationVersions);
+            if ( d == null ) {
+                throw new NoConfigFoundException("Could not find a config to load");
+            } else {
+                d = patchConfig(configMigrations, d, serializer);
+                return deserialize(serializer, configName, d.getSerializedConfig(), configClass);
+            }
+        }
+    }
+
+    //the saved config is always read, so that we know whether the cached config is up to date
+    private <V> V doCachedLoad(String configName, ConfigSerializer serializer, Class<V> configClass, ConfigSource configSource, SortedMap<Long, List<ConfigMigrationStategy>> configMigrations, ConfigCache cache) throws Exception {
+        ConfigData d = readConfigData(configName, configSource, new TreeSet<Long>(configMigrations.keySet()));
         if ( d == null ) {
             throw new NoConfigFoundException("Could not find a config to load");
+        }
+
+        ContentDigest contentDigest = ContentDigest.of(d.getSerializedConfig());
+        long version = d.getVersion();
+        long migratedVersion = configMigrations.lastKey();
+        V config = cache.get(configName, configClass, serializer, version, migratedVersion, contentDigest);
+        if ( config == null ) {
+            ConfigMetricsImplementation.metrics.recordCacheMiss(configName);
+            d = patchConfig(configMigrations, d, serializer);
+            config = deserialize(serializer, configName, d.getSerializedConfig(), configClass);
+            config = cache.put(configName, configClass, serializer, version, migratedVersion, contentDigest, config);
         } else {
-            d = patchConfig(configMigrations, d);
-            String serializedConfig = d.getSerializedConfig();
-            return serializer.deserialize(serializedConfig, configClass);
+            ConfigMetricsImplementation.metrics.recordCacheHit(configName);
+            ConfigLogImplementation.logMethods.info("config " + configName + " at version " + version + " is unchanged, using cached config");
         }
+        return config;
     }
 
     private URL doSave(String configName, Object config, ConfigSerializer serializer, ConfigSink configSink) throws Exception {
+        long startTime = System.nanoTime();
+        try {
+            URL result = saveToSink(configName, config, serializer, configSink);
+            recordTime(ConfigPhase.SAVE, configName, startTime);
+            return result;
+        } catch (Exception e) {
+            ConfigMetricsImplementation.metrics.recordFailure(ConfigPhase.SAVE, configName, e);
+            throw e;
+        }
+    }
+
+    //write a config already serialized by saveConfigAsync, the save time includes the time taken to serialize it
+    private URL doWrite(String configName, String serializedConfig, long serializeNanos, ConfigSink configSink) throws Exception {
+        long startTime = System.nanoTime();
+        try {
+            URL result = writeToSink(configName, serializedConfig, readConfigMigrations(), configSink);
+            ConfigMetricsImplementation.metrics.recordTime(ConfigPhase.SAVE, configName, serializeNanos + System.nanoTime() - startTime);
+            return result;
+        } catch (Exception e) {
+            ConfigMetricsImplementation.metrics.recordFailure(ConfigPhase.SAVE, configName, e);
+            throw e;
+        }
+    }
+
+    private URL saveToSink(String configName, final Object config, final ConfigSerializer serializer, ConfigSink configSink) throws Exception {
         SortedMap<Long, List<ConfigMigrationStategy>> configMigrations = readConfigMigrations();
-        String serializedConfig = serializer.serialize(config);
+        URL result;
+        if ( configSink instanceof StreamingConfigSink && serializer instanceof StreamingConfigSerializer) {
+            long startTime = System.nanoTime();
+            result = ((StreamingConfigSink)configSink).saveConfiguration(configName, configMigrations.lastKey(), new ConfigWriter() {
+                public void writeConfig(Writer writer) throws Exception {
+                    ((StreamingConfigSerializer)serializer).serialize(config, writer);
+                }
+            });
+            recordTime(ConfigPhase.WRITE, configName, startTime);
+        } else {
+            long startTime = System.nanoTime();
+            String serializedConfig = serializer.serialize(config);
+            recordTime(ConfigPhase.SERIALIZE, configName, startTime);
+            result = writeToSink(configName, serializedConfig, configMigrations, configSink);
+        }
+        return result;
+    }
+
+    private URL writeToSink(String configName, String serializedConfig, SortedMap<Long, List<ConfigMigrationStategy>> configMigrations, ConfigSink configSink) throws Exception {
+        long startTime = System.nanoTime();
         ConfigData configData = new ConfigData(configName, configMigrations.lastKey(), serializedConfig);
-        return configSink.saveConfiguration(configData);
+        URL result = configSink.saveConfiguration(configData);
+        recordTime(ConfigPhase.WRITE, configName, startTime);
+        return result;
+    }
+
+    private ConfigData readConfigData(String configName, ConfigSource configSource, SortedSet<Long> migrationVersions) throws ConfigManagerException {
+        long startTime = System.nanoTime();
+        ConfigData result = configSource.loadConfiguration(configName, migrationVersions);
+        recordTime(ConfigPhase.READ, configName, startTime);
+        return result;
+    }
+
+    private static <V> V deserialize(ConfigSerializer serializer, String configName, String serializedConfig, Class<V> configClass) throws Exception {
+        long startTime = System.nanoTime();
+        V result = serializer.deserialize(serializedConfig, configClass);
+        recordTime(ConfigPhase.DESERIALIZE, configName, startTime);
+        return result;
+    }
+
+    private static void recordTime(ConfigPhase phase, String configName, long startNanos) {
+        ConfigMetricsImplementation.metrics.recordTime(phase, configName, System.nanoTime() - startNanos);
     }
 
     private SortedMap<Long, List<ConfigMigrationStategy>> readConfigMigrations() throws Exception {
+        awaitWarmUp();
+        return loadConfigMigrations();
+    }
+
+    private SortedMap<Long, List<ConfigMigrationStategy>> loadConfigMigrations() throws Exception {
         SortedMap<Long, List<ConfigMigrationStategy>> configMigrations;
         configMigrations = migrationSource.loadConfigMigrations();
         if ( configMigrations.size() == 0) {
@@ -220,24 +773,74 @@ public class ConfigManager {
     }
 
 
-    private ConfigData patchConfig(SortedMap<Long,List<ConfigMigrationStategy>> migrations, ConfigData oldConfig) {
-        SortedMap<Long,List<ConfigMigrationStategy>> migrationsToRun =
-                migrations.tailMap(oldConfig.getVersion()); // this is inclusive of the fromVersion
-
+    private ConfigData patchConfig(SortedMap<Long,List<ConfigMigrationStategy>> migrations, ConfigData oldConfig, ConfigSerializer serializer) {
         String configName = oldConfig.getConfigName();
-        long fromVersion = oldConfig.getVersion();
-        long toVersion = migrations.lastKey();
-        String configString = oldConfig.getSerializedConfig();
-        ConfigLogImplementation.logMethods.info("config " + configName + " at version " + fromVersion + ", required version " + toVersion);
-
-        migrationsToRun.remove(fromVersion); //we are already at this patch version, don't need to run migration        
-        for (Map.Entry<Long, List<ConfigMigrationStategy>> entry : migrationsToRun.entrySet() ) {
-            for (ConfigMigrationStategy s : entry.getValue()) {
-                ConfigLogImplementation.logMethods.info("Migrating config " + configName + " to version " + entry.getKey() + " using strategy " + s);
-                configString = s.migrate(configName, configString);
+        MigrationPlan plan = migrationPlanCache.getMigrationPlan(migrations, oldConfig.getVersion());
+        ConfigLogImplementation.logMethods.info("config " + configName + " at version " + plan.getFromVersion() + ", required version " + plan.getToVersion());
+
+        String configString = migrate(plan, configName, oldConfig.getSerializedConfig(), serializer);
+        return new ConfigData(configName, plan.getToVersion(), configString);
+    }
+
+    //migrations work on xml, so a config saved in another format is migrated as the equivalent xml
+    private static String migrate(MigrationPlan plan, String configName, String config, ConfigSerializer serializer) {
+        String result = config;
+        if ( plan.getStrategyCount() > 0 ) {
+            long startTime = System.nanoTime();
+            if ( serializer instanceof MigratableConfigSerializer ) {
+                config = ((MigratableConfigSerializer)serializer).toMigratableXml(config);
+            }
+            result = plan.migrate(configName, config);
+            recordTime(ConfigPhase.MIGRATE, configName, startTime);
+            ConfigMetricsImplementation.metrics.recordMigration(configName, plan.getFromVersion(), plan.getToVersion(), plan.getStrategyCount());
+        }
+        return result;
+    }
+
+    private static String readFully(Reader reader) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        char[] buffer = new char[4096];
+        int charsRead;
+        while ((charsRead = reader.read(buffer)) != -1) {
+            sb.append(buffer, 0, charsRead);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Deserializes a config directly from the source stream if it is already at the latest version,
+     * otherwise reads it into a String so that the migrations can be run
+     */
+    private class StreamingConfigReader<V> implements ConfigReader<V> {
+
+        private SortedMap<Long, List<ConfigMigrationStategy>> configMigrations;
+        private StreamingConfigSerializer serializer;
+        private Class<V> configClass;
+
+        public StreamingConfigReader(SortedMap<Long, List<ConfigMigrationStategy>> configMigrations, StreamingConfigSerializer serializer, Class<V> configClass) {
+            this.configMigrations = configMigrations;
+            this.serializer = serializer;
+            this.configClass = configClass;
+        }
+
+        public V readConfig(String configName, long version, Reader configReader) throws Exception {
+            MigrationPlan plan = migrationPlanCache.getMigrationPlan(configMigrations, version);
+            ConfigLogImplementation.logMethods.info("config " + configName + " at version " + plan.getFromVersion() + ", required version " + plan.getToVersion());
+            V result;
+            if ( plan.getStrategyCount() == 0 ) {
+                //the config is read as it is deserialized, so READ is not recorded and is included in DESERIALIZE
+                long startTime = System.nanoTime();
+                result = serializer.deserialize(configReader, configClass);
+                recordTime(ConfigPhase.DESERIALIZE, configName, startTime);
+            } else {
+                long startTime = System.nanoTime();
+                String serializedConfig = readFully(configReader);
+                recordTime(ConfigPhase.READ, configName, startTime);
+                String configString = migrate(plan, configName, serializedConfig, serializer);
+                result = deserialize(serializer, configName, configString, configClass);
             }
+            return result;
         }
-        return new ConfigData(configName, toVersion, configString);
     }
 
     /**
@@ -249,6 +852,44 @@ public class ConfigManager {
         return configSink.canWrite();
     }
 
+    public ConfigCache getConfigCache() {
+        return configCache;
+    }
+
+    /**
+     * Set a cache of deserialized configs, so that loading an unchanged config does not migrate and deserialize
+     * it again. By default there is no cache
+     * @param configCache a ConfigCache, or null to stop caching
+     */
+    public void setConfigCache(ConfigCache configCache) {
+        this.configCache = configCache;
+    }
+
+    public ExecutorService getBulkLoadExecutor() {
+        return bulkLoadExecutor;
+    }
+
+    /**
+     * Set the executor used by loadConfigs. ConfigManager does not shut down an executor which is set
+     * @param bulkLoadExecutor an ExecutorService, or null to create threads for each call to loadConfigs
+     */
+    public void setBulkLoadExecutor(ExecutorService bulkLoadExecutor) {
+        this.bulkLoadExecutor = bulkLoadExecutor;
+    }
+
+    public Executor getAsyncExecutor() {
+        return asyncExecutor;
+    }
+
+    /**
+     * Set the executor used by loadConfigAsync and saveConfigAsync. ConfigManager does not shut down an executor which
+     * is set
+     * @param asyncExecutor an Executor, or null to use a pool of daemon threads created by ConfigManager
+     */
+    public void setAsyncExecutor(Executor asyncExecutor) {
+        this.asyncExecutor = asyncExecutor;
+    }
+
     public ConfigSource getConfigSource() {
         return configSource;
     }
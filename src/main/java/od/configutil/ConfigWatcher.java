@@ -0,0 +1,364 @@
+package od.configutil;
+
+import od.configutil.serializer.ConfigSerializer;
+import od.configutil.sinkandsource.ConfigData;
+import od.configutil.sinkandsource.ConfigDirectoryWatcher;
+import od.configutil.sinkandsource.ConfigDirectorySourceAndSink;
+import od.configutil.sinkandsource.ConfigSource;
+import od.configutil.sinkandsource.FileSource;
+import od.configutil.util.ConfigLogImplementation;
+import od.configutil.util.ConfigManagerException;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Watches the files behind a ConfigSource for changes and notifies ConfigListeners
+ *
+ * Directories of a ConfigDirectorySourceAndSink are watched with a ConfigDirectoryWatcher, the file of a FileSource is checked
+ * for a change to its last modified time and length. A burst of changes, such as a save rotating the config and
+ * backup files, is debounced into a single check. The check loads the serialized config and compares it with the
+ * config last loaded, and the config is only migrated, deserialized and passed to listeners if it has changed.
+ *
+ * A config is watched once for each config source, listeners added for the same configName and config source
+ * share the watch, and each listener's config is deserialized with the serializer it was added with
+ *
+ * Checks and listener notifications take place on a single daemon thread, which runs while any config is watched
+ */
+class ConfigWatcher {
+
+    static final long DEFAULT_DEBOUNCE_MILLIS = 500;
+    static final long DEFAULT_POLL_INTERVAL_MILLIS = 1000;
+
+    private final ConfigManager configManager;
+    private final Map<WatchedConfigKey, WatchedConfig> watchedConfigs = new HashMap<WatchedConfigKey, WatchedConfig>();
+    private final Map<File, DirectoryWatch> directoryWatches = new HashMap<File, DirectoryWatch>();
+    private ScheduledExecutorService executor;
+    private volatile long debounceMillis = DEFAULT_DEBOUNCE_MILLIS;
+    private volatile long pollIntervalMillis = DEFAULT_POLL_INTERVAL_MILLIS;
+
+    public ConfigWatcher(ConfigManager configManager) {
+        this.configManager = configManager;
+    }
+
+    public <V> void addListener(String configName, Class<V> configClass, ConfigListener<? super V> listener, ConfigSource configSource, ConfigSerializer serializer) throws ConfigManagerException {
+        WatchedConfig watchedConfig;
+        synchronized (this) {
+            WatchedConfigKey key = new WatchedConfigKey(configName, configSource);
+            watchedConfig = watchedConfigs.get(key);
+            if ( watchedConfig == null ) {
+                watchedConfig = new WatchedConfig(key);
+                startWatching(watchedConfig);
+                watchedConfigs.put(key, watchedConfig);
+            }
+            watchedConfig.listeners.add(new ListenerRegistration<V>(configClass, listener, serializer));
+        }
+        //load the current config without holding the lock, so that other configs can be added and removed meanwhile
+        watchedConfig.loadInitialConfig();
+    }
+
+    public synchronized void removeListener(String configName, ConfigListener<?> listener) {
+        for ( WatchedConfig watchedConfig : new ArrayList<WatchedConfig>(watchedConfigs.values())) {
+            if ( watchedConfig.key.configName.equals(configName) && watchedConfig.removeListener(listener)) {
+                if ( watchedConfig.listeners.isEmpty()) {
+                    watchedConfigs.remove(watchedConfig.key);
+                    stopWatching(watchedConfig);
+                }
+                break;
+            }
+        }
+    }
+
+    public void setDebounceMillis(long debounceMillis) {
+        this.debounceMillis = debounceMillis;
+    }
+
+    public long getDebounceMillis() {
+        return debounceMillis;
+    }
+
+    public void setPollIntervalMillis(long pollIntervalMillis) {
+        this.pollIntervalMillis = pollIntervalMillis;
+    }
+
+    public long getPollIntervalMillis() {
+        return pollIntervalMillis;
+    }
+
+    //the watch is started before the current config is loaded, so that no change can be missed
+    private void startWatching(WatchedConfig watchedConfig) throws ConfigManagerException {
+        ConfigSource source = watchedConfig.key.configSource;
+        if ( ! (source instanceof ConfigDirectorySourceAndSink || source instanceof FileSource)) {
+            throw new ConfigManagerException("Cannot watch config source " + source + ", only ConfigDirectorySourceAndSink and FileSource can be watched");
+        }
+
+        if ( executor == null ) {
+            executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "ConfigWatcher");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        }
+
+        if ( source instanceof ConfigDirectorySourceAndSink) {
+            File directory = ((ConfigDirectorySourceAndSink)source).getConfigDirectory();
+            DirectoryWatch directoryWatch = directoryWatches.get(directory);
+            if ( directoryWatch == null ) {
+                try {
+                    directoryWatch = new DirectoryWatch(directory);
+                } catch (IOException e) {
+                    shutdownExecutorIfUnused();
+                    throw new ConfigManagerException("Could not watch config directory " + directory, e);
+                }
+                directoryWatches.put(directory, directoryWatch);
+            }
+            directoryWatch.configs.add(watchedConfig);
+        } else {
+            FileModificationCheck check = new FileModificationCheck(((FileSource)source).getFile(), watchedConfig);
+            watchedConfig.pollTask = executor.scheduleWithFixedDelay(check, pollIntervalMillis, pollIntervalMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void stopWatching(WatchedConfig watchedConfig) {
+        if ( watchedConfig.pendingCheck != null ) {
+            watchedConfig.pendingCheck.cancel(false);
+        }
+        if ( watchedConfig.pollTask != null ) {
+            watchedConfig.pollTask.cancel(false);
+        }
+
+        for ( Map.Entry<File, DirectoryWatch> e : directoryWatches.entrySet()) {
+            DirectoryWatch directoryWatch = e.getValue();
+            if ( directoryWatch.configs.remove(watchedConfig)) {
+                if ( directoryWatch.configs.isEmpty()) {
+                    directoryWatch.close();
+                    directoryWatches.remove(e.getKey());
+                }
+                break;
+            }
+        }
+
+        shutdownExecutorIfUnused();
+    }
+
+    private void shutdownExecutorIfUnused() {
+        if ( watchedConfigs.isEmpty()) {
+            executor.shutdown();
+            executor = null;
+        }
+    }
+
+    private synchronized void changeDetected(WatchedConfig watchedConfig) {
+        //the config may have stopped being watched since the change was detected
+        if ( watchedConfigs.get(watchedConfig.key) == watchedConfig ) {
+            if ( watchedConfig.pendingCheck != null ) {
+                watchedConfig.pendingCheck.cancel(false);
+            }
+            watchedConfig.pendingCheck = executor.schedule(watchedConfig, debounceMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Identifies a watched config by configName and config source
+     */
+    private static class WatchedConfigKey {
+        private final String configName;
+        private final ConfigSource configSource;
+
+        public WatchedConfigKey(String configName, ConfigSource configSource) {
+            this.configName = configName;
+            this.configSource = configSource;
+        }
+
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof WatchedConfigKey)) return false;
+
+            WatchedConfigKey that = (WatchedConfigKey) o;
+
+            if (!configName.equals(that.configName)) return false;
+            if (!configSource.equals(that.configSource)) return false;
+
+            return true;
+        }
+
+        public int hashCode() {
+            return 31 * configName.hashCode() + configSource.hashCode();
+        }
+    }
+
+    /**
+     * A config being watched, and its listeners
+     * The config is checked for changes when run
+     */
+    private class WatchedConfig implements Runnable {
+
+        private final WatchedConfigKey key;
+        private final String configName;
+        private final List<ListenerRegistration<?>> listeners = new CopyOnWriteArrayList<ListenerRegistration<?>>();
+        private ScheduledFuture<?> pendingCheck;
+        private ScheduledFuture<?> pollTask;
+
+        //guarded by this WatchedConfig, so a check waits for the initial load
+        private boolean initialConfigLoaded;
+        private ConfigData lastConfig;
+
+        public WatchedConfig(WatchedConfigKey key) {
+            this.key = key;
+            this.configName = key.configName;
+        }
+
+        //the first listener added loads the config, later listeners wait until it is loaded
+        public synchronized void loadInitialConfig() {
+            if ( ! initialConfigLoaded ) {
+                lastConfig = loadConfigData();
+                initialConfigLoaded = true;
+            }
+        }
+
+        public boolean removeListener(ConfigListener<?> listener) {
+            boolean result = false;
+            for ( ListenerRegistration<?> r : listeners) {
+                if ( r.listener == listener ) {
+                    result = listeners.remove(r);
+                    break;
+                }
+            }
+            return result;
+        }
+
+        //a check before the initial load is skipped, the initial load will see the change
+        public synchronized void run() {
+            try {
+                ConfigData config = initialConfigLoaded ? loadConfigData() : null;
+                if ( config != null && ! isSameConfig(config, lastConfig)) {
+                    ConfigLogImplementation.logMethods.info("Config " + configName + " has changed, notifying listeners");
+                    lastConfig = config;
+                    notifyListeners(config);
+                }
+            } catch (Throwable t) {
+                ConfigLogImplementation.logMethods.error("Failed to reload changed config " + configName, t);
+            }
+        }
+
+        private ConfigData loadConfigData() {
+            ConfigData result = null;
+            try {
+                result = configManager.loadConfigData(configName, key.configSource);
+            } catch (Throwable t) {
+                ConfigLogImplementation.logMethods.warn("Could not load config " + configName + " to check for changes, " + t);
+            }
+            return result;
+        }
+
+        private boolean isSameConfig(ConfigData config, ConfigData lastConfig) {
+            return lastConfig != null &&
+                config.getVersion() == lastConfig.getVersion() &&
+                config.getSerializedConfig().equals(lastConfig.getSerializedConfig());
+        }
+
+        //deserialize once for each config class and serializer listened with
+        private void notifyListeners(ConfigData config) throws Exception {
+            Map<List<Object>, Object> configsByClassAndSerializer = new HashMap<List<Object>, Object>();
+            for ( ListenerRegistration<?> r : listeners) {
+                List<Object> classAndSerializer = Arrays.<Object>asList(r.configClass, r.serializer);
+                Object configObject = configsByClassAndSerializer.get(classAndSerializer);
+                if ( configObject == null ) {
+                    configObject = configManager.migrateAndDeserialize(config, r.configClass, r.serializer);
+                    configsByClassAndSerializer.put(classAndSerializer, configObject);
+                }
+
+                try {
+                    r.configChanged(configName, configObject);
+                } catch (Throwable t) {
+                    ConfigLogImplementation.logMethods.error("Config listener for " + configName + " failed", t);
+                }
+            }
+        }
+    }
+
+    private static class ListenerRegistration<V> {
+        private final Class<V> configClass;
+        private final ConfigListener<? super V> listener;
+        private final ConfigSerializer serializer;
+
+        public ListenerRegistration(Class<V> configClass, ConfigListener<? super V> listener, ConfigSerializer serializer) {
+            this.configClass = configClass;
+            this.listener = listener;
+            this.serializer = serializer;
+        }
+
+        public void configChanged(String configName, Object config) {
+            listener.configChanged(configName, configClass.cast(config));
+        }
+    }
+
+    /**
+     * Checks whether a config file's last modified time or length have changed since the last check
+     */
+    private class FileModificationCheck implements Runnable {
+        private final File file;
+        private final WatchedConfig watchedConfig;
+        private long lastModified;
+        private long length;
+
+        public FileModificationCheck(File file, WatchedConfig watchedConfig) {
+            this.file = file;
+            this.watchedConfig = watchedConfig;
+            this.lastModified = file.lastModified();
+            this.length = file.length();
+        }
+
+        public void run() {
+            long newLastModified = file.lastModified();
+            long newLength = file.length();
+            if ( newLastModified != lastModified || newLength != length) {
+                lastModified = newLastModified;
+                length = newLength;
+                changeDetected(watchedConfig);
+            }
+        }
+    }
+
+    /**
+     * Watches a config directory for the configs watched in that directory, sharing the directory's
+     * ConfigDirectoryWatcher with any ConfigDirectoryIndex
+     */
+    private class DirectoryWatch implements ConfigDirectoryWatcher.DirectoryListener {
+
+        private final File directory;
+        private final Set<WatchedConfig> configs = new CopyOnWriteArraySet<WatchedConfig>();
+
+        public DirectoryWatch(File directory) throws IOException {
+            this.directory = directory;
+            ConfigDirectoryWatcher.addListener(directory, this);
+        }
+
+        //config file names start with the configName, a false match only causes an unnecessary check
+        public void fileChanged(String fileName) {
+            for ( WatchedConfig c : configs) {
+                if ( fileName.startsWith(c.configName + ".")) {
+                    changeDetected(c);
+                }
+            }
+        }
+
+        public void eventsLost() {
+            for ( WatchedConfig c : configs) {
+                changeDetected(c);
+            }
+        }
+
+        public void watchEnded() {
+            ConfigLogImplementation.logMethods.warn("Changes to configs in " + directory + " will no longer be detected");
+        }
+
+        public void close() {
+            ConfigDirectoryWatcher.removeListener(directory, this);
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package od.configutil.metrics;
+
+/**
+ * Receives timings and counts from ConfigManager and the config sources and sinks, see ConfigMetricsImplementation
+ *
+ * Implementations are called from any thread which loads or saves a config, so must be thread safe, and should
+ * be quick, since they are called while the config is loaded or saved
+ */
+public interface ConfigMetrics {
+
+    void recordTime(ConfigPhase phase, String configName, long nanos);
+
+    /**
+     * A load or save of the config failed, including a load which failed because no saved config was found
+     */
+    void recordFailure(ConfigPhase phase, String configName, Throwable cause);
+
+    void recordBytesRead(String configName, long bytes);
+
+    void recordBytesWritten(String configName, long bytes);
+
+    /**
+     * A config saved at fromVersion was migrated to toVersion using strategyCount migration strategies
+     */
+    void recordMigration(String configName, long fromVersion, long toVersion, int strategyCount);
+
+    void recordCacheHit(String configName);
+
+    void recordCacheMiss(String configName);
+}
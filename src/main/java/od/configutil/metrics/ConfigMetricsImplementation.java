@@ -0,0 +1,35 @@
+package od.configutil.metrics;
+
+/**
+ * Holds the ConfigMetrics used by ConfigManager and the config sources and sinks. By default metrics are not
+ * recorded, set an InMemoryConfigMetrics or another implementation to record them
+ */
+public class ConfigMetricsImplementation implements ConfigMetrics {
+
+    public static volatile ConfigMetrics metrics = new ConfigMetricsImplementation();
+
+    public static void setConfigMetrics(ConfigMetrics m) {
+        ConfigMetricsImplementation.metrics = m;
+    }
+
+    public void recordTime(ConfigPhase phase, String configName, long nanos) {
+    }
+
+    public void recordFailure(ConfigPhase phase, String configName, Throwable cause) {
+    }
+
+    public void recordBytesRead(String configName, long bytes) {
+    }
+
+    public void recordBytesWritten(String configName, long bytes) {
+    }
+
+    public void recordMigration(String configName, long fromVersion, long toVersion, int strategyCount) {
+    }
+
+    public void recordCacheHit(String configName) {
+    }
+
+    public void recordCacheMiss(String configName) {
+    }
+}
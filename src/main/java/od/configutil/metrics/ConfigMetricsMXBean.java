@@ -0,0 +1,29 @@
+package od.configutil.metrics;
+
+import java.util.Map;
+
+/**
+ * The JMX view of InMemoryConfigMetrics, see InMemoryConfigMetrics#registerMBean
+ */
+public interface ConfigMetricsMXBean {
+
+    /**
+     * @return the statistics for each ConfigPhase, by phase name
+     */
+    Map<String, PhaseStatistics> getPhaseStatistics();
+
+    long getBytesRead();
+
+    long getBytesWritten();
+
+    long getCacheHits();
+
+    long getCacheMisses();
+
+    /**
+     * @return the number of configs migrated from each saved version
+     */
+    Map<Long, Long> getMigrationsByFromVersion();
+
+    void reset();
+}
@@ -0,0 +1,20 @@
+package od.configutil.metrics;
+
+/**
+ * The phases of loading and saving a config which are timed by ConfigManager
+ *
+ * LOAD and SAVE time the whole load or save, and the other phases are timed within them.
+ * When a config is loaded from a StreamingConfigSource with a StreamingConfigSerializer and needs no migration, the
+ * config is deserialized as it is read, so READ is not recorded and DESERIALIZE includes reading the config. A config
+ * which needs migrating is read fully first, and READ is recorded. In the same way, when a
+ * config is saved to a StreamingConfigSink, SERIALIZE is not timed separately and WRITE includes serializing the config
+ */
+public enum ConfigPhase {
+    LOAD,
+    READ,
+    MIGRATE,
+    DESERIALIZE,
+    SAVE,
+    SERIALIZE,
+    WRITE
+}
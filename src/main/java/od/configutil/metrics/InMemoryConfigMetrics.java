@@ -0,0 +1,175 @@
+package od.configutil.metrics;
+
+import od.configutil.util.ConfigManagerException;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A ConfigMetrics which keeps a histogram of the times for each ConfigPhase, and totals of the other metrics,
+ * for all configs. Metrics are kept from when it is created or last reset.
+ *
+ * To record metrics, set it with ConfigMetricsImplementation.setConfigMetrics. The metrics may be read using the
+ * getters, or through JMX once registerMBean has been called
+ */
+public class InMemoryConfigMetrics implements ConfigMetrics, ConfigMetricsMXBean {
+
+    public static final String DEFAULT_OBJECT_NAME = "od.configutil:type=ConfigMetrics";
+
+    private final Map<ConfigPhase, TimerHistogram> timers = new EnumMap<ConfigPhase, TimerHistogram>(ConfigPhase.class);
+    private final Map<ConfigPhase, AtomicLong> failures = new EnumMap<ConfigPhase, AtomicLong>(ConfigPhase.class);
+    private final AtomicLong bytesRead = new AtomicLong();
+    private final AtomicLong bytesWritten = new AtomicLong();
+    private final AtomicLong cacheHits = new AtomicLong();
+    private final AtomicLong cacheMisses = new AtomicLong();
+    private final ConcurrentMap<Long, AtomicLong> migrationsByFromVersion = new ConcurrentHashMap<Long, AtomicLong>();
+    private ObjectName registeredName;
+
+    public InMemoryConfigMetrics() {
+        //the maps are populated up front and not modified afterwards, so can be read without locking
+        for ( ConfigPhase phase : ConfigPhase.values()) {
+            timers.put(phase, new TimerHistogram());
+            failures.put(phase, new AtomicLong());
+        }
+    }
+
+    public void recordTime(ConfigPhase phase, String configName, long nanos) {
+        timers.get(phase).record(nanos);
+    }
+
+    public void recordFailure(ConfigPhase phase, String configName, Throwable cause) {
+        failures.get(phase).incrementAndGet();
+    }
+
+    public void recordBytesRead(String configName, long bytes) {
+        bytesRead.addAndGet(bytes);
+    }
+
+    public void recordBytesWritten(String configName, long bytes) {
+        bytesWritten.addAndGet(bytes);
+    }
+
+    public void recordMigration(String configName, long fromVersion, long toVersion, int strategyCount) {
+        AtomicLong count = migrationsByFromVersion.get(fromVersion);
+        if ( count == null ) {
+            AtomicLong newCount = new AtomicLong();
+            count = migrationsByFromVersion.putIfAbsent(fromVersion, newCount);
+            if ( count == null ) {
+                count = newCount;
+            }
+        }
+        count.incrementAndGet();
+    }
+
+    public void recordCacheHit(String configName) {
+        cacheHits.incrementAndGet();
+    }
+
+    public void recordCacheMiss(String configName) {
+        cacheMisses.incrementAndGet();
+    }
+
+    public PhaseStatistics getPhaseStatistics(ConfigPhase phase) {
+        return new PhaseStatistics(phase, timers.get(phase), failures.get(phase).get());
+    }
+
+    public Map<String, PhaseStatistics> getPhaseStatistics() {
+        Map<String, PhaseStatistics> result = new LinkedHashMap<String, PhaseStatistics>();
+        for ( ConfigPhase phase : ConfigPhase.values()) {
+            result.put(phase.name(), getPhaseStatistics(phase));
+        }
+        return result;
+    }
+
+    public long getBytesRead() {
+        return bytesRead.get();
+    }
+
+    public long getBytesWritten() {
+        return bytesWritten.get();
+    }
+
+    public long getCacheHits() {
+        return cacheHits.get();
+    }
+
+    public long getCacheMisses() {
+        return cacheMisses.get();
+    }
+
+    public Map<Long, Long> getMigrationsByFromVersion() {
+        Map<Long, Long> result = new TreeMap<Long, Long>();
+        for ( Map.Entry<Long, AtomicLong> e : migrationsByFromVersion.entrySet()) {
+            result.put(e.getKey(), e.getValue().get());
+        }
+        return result;
+    }
+
+    /**
+     * Clear the metrics, metrics recorded while the reset is in progress may be partly cleared
+     */
+    public void reset() {
+        for ( ConfigPhase phase : ConfigPhase.values()) {
+            timers.get(phase).reset();
+            failures.get(phase).set(0);
+        }
+        bytesRead.set(0);
+        bytesWritten.set(0);
+        cacheHits.set(0);
+        cacheMisses.set(0);
+        migrationsByFromVersion.clear();
+    }
+
+    /**
+     * Register with the platform MBean server using DEFAULT_OBJECT_NAME
+     */
+    public ObjectName registerMBean() throws ConfigManagerException {
+        try {
+            return registerMBean(new ObjectName(DEFAULT_OBJECT_NAME));
+        } catch (JMException e) {
+            throw new ConfigManagerException("Failed to register config metrics MBean", e);
+        }
+    }
+
+    public synchronized ObjectName registerMBean(ObjectName objectName) throws ConfigManagerException {
+        try {
+            unregisterMBean();
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+            registeredName = objectName;
+            return objectName;
+        } catch (JMException e) {
+            throw new ConfigManagerException("Failed to register config metrics MBean " + objectName, e);
+        }
+    }
+
+    public synchronized void unregisterMBean() throws ConfigManagerException {
+        if ( registeredName != null ) {
+            try {
+                MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+                if ( server.isRegistered(registeredName)) {
+                    server.unregisterMBean(registeredName);
+                }
+                registeredName = null;
+            } catch (JMException e) {
+                throw new ConfigManagerException("Failed to unregister config metrics MBean " + registeredName, e);
+            }
+        }
+    }
+
+    public String toString() {
+        return "InMemoryConfigMetrics{" +
+            "phaseStatistics=" + getPhaseStatistics().values() +
+            ", bytesRead=" + bytesRead +
+            ", bytesWritten=" + bytesWritten +
+            ", cacheHits=" + cacheHits +
+            ", cacheMisses=" + cacheMisses +
+            ", migrationsByFromVersion=" + getMigrationsByFromVersion() +
+            '}';
+    }
+}
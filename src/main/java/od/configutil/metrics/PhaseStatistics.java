@@ -0,0 +1,77 @@
+package od.configutil.metrics;
+
+/**
+ * The timings recorded for a ConfigPhase by InMemoryConfigMetrics, in milliseconds
+ */
+public class PhaseStatistics {
+
+    private static final double NANOS_PER_MILLI = 1000000d;
+
+    private final String phase;
+    private final long count;
+    private final long failureCount;
+    private final double meanMillis;
+    private final double medianMillis;
+    private final double percentile90Millis;
+    private final double percentile99Millis;
+    private final double maxMillis;
+
+    PhaseStatistics(ConfigPhase phase, TimerHistogram histogram, long failureCount) {
+        this.phase = phase.name();
+        this.count = histogram.getCount();
+        this.failureCount = failureCount;
+        this.meanMillis = count == 0 ? 0 : histogram.getTotalNanos() / NANOS_PER_MILLI / count;
+        this.medianMillis = histogram.getPercentileNanos(50) / NANOS_PER_MILLI;
+        this.percentile90Millis = histogram.getPercentileNanos(90) / NANOS_PER_MILLI;
+        this.percentile99Millis = histogram.getPercentileNanos(99) / NANOS_PER_MILLI;
+        this.maxMillis = histogram.getMaxNanos() / NANOS_PER_MILLI;
+    }
+
+    public String getPhase() {
+        return phase;
+    }
+
+    /**
+     * @return the number of times the phase completed, failures are not timed
+     */
+    public long getCount() {
+        return count;
+    }
+
+    public long getFailureCount() {
+        return failureCount;
+    }
+
+    public double getMeanMillis() {
+        return meanMillis;
+    }
+
+    public double getMedianMillis() {
+        return medianMillis;
+    }
+
+    public double getPercentile90Millis() {
+        return percentile90Millis;
+    }
+
+    public double getPercentile99Millis() {
+        return percentile99Millis;
+    }
+
+    public double getMaxMillis() {
+        return maxMillis;
+    }
+
+    public String toString() {
+        return "PhaseStatistics{" +
+            "phase=" + phase +
+            ", count=" + count +
+            ", failureCount=" + failureCount +
+            ", meanMillis=" + meanMillis +
+            ", medianMillis=" + medianMillis +
+            ", percentile90Millis=" + percentile90Millis +
+            ", percentile99Millis=" + percentile99Millis +
+            ", maxMillis=" + maxMillis +
+            '}';
+    }
+}
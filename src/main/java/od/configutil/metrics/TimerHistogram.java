@@ -0,0 +1,104 @@
+package od.configutil.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of times in nanoseconds, which can be updated concurrently without locking
+ *
+ * Each power of two is divided into SUB_BUCKETS buckets, so a percentile is reported to within 1/SUB_BUCKETS of
+ * the recorded time, with a fixed number of buckets whatever the range of times recorded
+ */
+class TimerHistogram {
+
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKET_COUNT = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong totalNanos = new AtomicLong();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    public void record(long nanos) {
+        nanos = Math.max(0, nanos);
+        counts.incrementAndGet(getBucket(nanos));
+        totalNanos.addAndGet(nanos);
+        long max = maxNanos.get();
+        while ( nanos > max && ! maxNanos.compareAndSet(max, nanos)) {
+            max = maxNanos.get();
+        }
+    }
+
+    public void reset() {
+        for ( int loop = 0; loop < BUCKET_COUNT; loop++) {
+            counts.set(loop, 0);
+        }
+        totalNanos.set(0);
+        maxNanos.set(0);
+    }
+
+    public long getCount() {
+        long result = 0;
+        for ( int loop = 0; loop < BUCKET_COUNT; loop++) {
+            result += counts.get(loop);
+        }
+        return result;
+    }
+
+    public long getTotalNanos() {
+        return totalNanos.get();
+    }
+
+    public long getMaxNanos() {
+        return maxNanos.get();
+    }
+
+    /**
+     * @return the time at or below which percentile % of the recorded times fall, or 0 if no times are recorded
+     */
+    public long getPercentileNanos(double percentile) {
+        long[] snapshot = new long[BUCKET_COUNT];
+        long count = 0;
+        for ( int loop = 0; loop < BUCKET_COUNT; loop++) {
+            snapshot[loop] = counts.get(loop);
+            count += snapshot[loop];
+        }
+
+        long result = 0;
+        if ( count > 0 ) {
+            long rank = Math.max(1, (long)Math.ceil(percentile / 100 * count));
+            long cumulativeCount = 0;
+            int bucket = 0;
+            while ( bucket < BUCKET_COUNT - 1 && cumulativeCount + snapshot[bucket] < rank) {
+                cumulativeCount += snapshot[bucket];
+                bucket++;
+            }
+            result = Math.min(getBucketMaximum(bucket), maxNanos.get());
+        }
+        return result;
+    }
+
+    //times below SUB_BUCKETS have a bucket each, above that the bucket is given by the highest bits of the time
+    static int getBucket(long nanos) {
+        int result;
+        if ( nanos < SUB_BUCKETS ) {
+            result = (int)nanos;
+        } else {
+            int shift = 63 - Long.numberOfLeadingZeros(nanos) - SUB_BUCKET_BITS;
+            result = (shift + 1) * SUB_BUCKETS + (int)(nanos >>> shift) - SUB_BUCKETS;
+        }
+        return result;
+    }
+
+    static long getBucketMaximum(int bucket) {
+        long result;
+        if ( bucket < SUB_BUCKETS ) {
+            result = bucket;
+        } else {
+            int shift = bucket / SUB_BUCKETS - 1;
+            long nextBucketMinimum = (long)(bucket % SUB_BUCKETS + SUB_BUCKETS + 1) << shift;
+            result = nextBucketMinimum - 1;
+        }
+        return result;
+    }
+}
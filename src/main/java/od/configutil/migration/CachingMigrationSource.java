@@ -0,0 +1,110 @@
+package od.configutil.migration;
+
+import od.configutil.util.ConfigLogImplementation;
+
+import java.util.*;
+
+/**
+ * A MigrationSource which wraps another MigrationSource, and caches the migrations it loads
+ *
+ * Reading the migrations is expensive - each migrations URL is opened and parsed, and every migration strategy
+ * is constructed by reflection - so the migrations are loaded once and the same (unmodifiable) map and strategy
+ * instances are shared by all subsequent loads and saves.
+ *
+ * The cache is invalidated when refresh() is called. If the delegate is a UrlMigrationLoader, the cache is also
+ * invalidated when the last modified time of any of the migrations URLs changes. Since checking the last modified
+ * time is not free, this check is made no more than once per lastModifiedCheckInterval
+ */
+public class CachingMigrationSource implements MigrationSource {
+
+    public static final long DEFAULT_LAST_MODIFIED_CHECK_INTERVAL = 5000;
+
+    private final MigrationSource delegate;
+    private volatile long lastModifiedCheckInterval = DEFAULT_LAST_MODIFIED_CHECK_INTERVAL;
+    private volatile CachedMigrations cachedMigrations;
+
+    public CachingMigrationSource(MigrationSource delegate) {
+        this.delegate = delegate;
+    }
+
+    public SortedMap<Long, List<ConfigMigrationStategy>> loadConfigMigrations() throws Exception {
+        CachedMigrations c = cachedMigrations;
+        if ( c == null || isStale(c)) {
+            c = reloadMigrations(c);
+        }
+        return c.migrations;
+    }
+
+    /**
+     * Discard any cached migrations, so that they are reloaded from the delegate on next use
+     */
+    public void refresh() {
+        cachedMigrations = null;
+    }
+
+    /**
+     * @param lastModifiedCheckInterval, minimum interval in millis between checks of the migration URLs last modified time,
+     * or -1 to never check the last modified time (in which case only refresh() will cause the migrations to be reloaded)
+     */
+    public void setLastModifiedCheckInterval(long lastModifiedCheckInterval) {
+        this.lastModifiedCheckInterval = lastModifiedCheckInterval;
+    }
+
+    public long getLastModifiedCheckInterval() {
+        return lastModifiedCheckInterval;
+    }
+
+    public MigrationSource getDelegate() {
+        return delegate;
+    }
+
+    private boolean isStale(CachedMigrations c) {
+        boolean result = false;
+        long interval = lastModifiedCheckInterval;
+        if ( interval >= 0 && delegate instanceof UrlMigrationLoader) {
+            long now = System.currentTimeMillis();
+            if ( now - c.lastChecked >= interval ) {
+                c.lastChecked = now;
+                long lastModified = ((UrlMigrationLoader)delegate).getLastModified();
+                if ( lastModified != c.lastModified ) {
+                    ConfigLogImplementation.logMethods.info("Config migrations have been modified, they will be reloaded");
+                    result = true;
+                }
+            }
+        }
+        return result;
+    }
+
+    private synchronized CachedMigrations reloadMigrations(CachedMigrations stale) throws Exception {
+        //another thread may have reloaded the migrations while we were waiting for the lock
+        CachedMigrations c = cachedMigrations;
+        if ( c == null || c == stale ) {
+            long lastModified = delegate instanceof UrlMigrationLoader ? ((UrlMigrationLoader)delegate).getLastModified() : 0;
+            c = new CachedMigrations(
+                createUnmodifiableMigrations(delegate.loadConfigMigrations()),
+                lastModified
+            );
+            cachedMigrations = c;
+        }
+        return c;
+    }
+
+    private SortedMap<Long, List<ConfigMigrationStategy>> createUnmodifiableMigrations(SortedMap<Long, List<ConfigMigrationStategy>> migrations) {
+        SortedMap<Long, List<ConfigMigrationStategy>> result = new TreeMap<Long, List<ConfigMigrationStategy>>();
+        for ( Map.Entry<Long, List<ConfigMigrationStategy>> e : migrations.entrySet()) {
+            result.put(e.getKey(), Collections.unmodifiableList(new ArrayList<ConfigMigrationStategy>(e.getValue())));
+        }
+        return Collections.unmodifiableSortedMap(result);
+    }
+
+    private static class CachedMigrations {
+        private final SortedMap<Long, List<ConfigMigrationStategy>> migrations;
+        private final long lastModified;
+        private volatile long lastChecked = System.currentTimeMillis();
+
+        private CachedMigrations(SortedMap<Long, List<ConfigMigrationStategy>> migrations, long lastModified) {
+            this.migrations = migrations;
+            this.lastModified = lastModified;
+        }
+    }
+}
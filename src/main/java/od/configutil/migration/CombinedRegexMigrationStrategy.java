@@ -0,0 +1,256 @@
+package od.configutil.migration;
+
+import od.configutil.util.ConfigLogImplementation;
+
+import java.util.*;
+import java.util.regex.Pattern;
+
+/**
+ * Applies a list of regular expression find and replace pairs with the same result as a series of
+ * RegexMigrationStrategy, but with fewer passes over the config.
+ *
+ * Consecutive pairs which are literal renames are combined and applied in a single scan of the config, where this
+ * gives the same result as applying them in turn. This is the case if no find string overlaps another find string or
+ * an earlier replacement. Any other pair is applied in its own pass, in order.
+ *
+ * A find pattern is literal if it contains no regular expression constructs other than escaped characters, such as
+ * od\.configutil\.OldClassName, and a replacement is literal if it contains no group references or escapes.
+ *
+ * The arguments are find and replace pairs, e.g. find1, replace1, find2, replace2.
+ * MigrationPlan combines consecutive RegexMigrationStrategy into a CombinedRegexMigrationStrategy automatically
+ */
+public class CombinedRegexMigrationStrategy implements ConfigMigrationStategy {
+
+    private static final String REGEX_METACHARS = "[](){}.*+?^$|";
+
+    private long versionTarget;
+    private List<Pass> passes = new ArrayList<Pass>();
+
+    public CombinedRegexMigrationStrategy(long versionTarget, String[] arguments) {
+        this(versionTarget, getFindPatterns(arguments), getReplacements(arguments));
+    }
+
+    CombinedRegexMigrationStrategy(long versionTarget, List<String> findPatterns, List<String> replacements) {
+        this.versionTarget = versionTarget;
+        LiteralPass literalPass = null;
+        for ( int loop = 0; loop < findPatterns.size(); loop++) {
+            String literalFind = getLiteral(findPatterns.get(loop));
+            String replacement = replacements.get(loop);
+            boolean literal = literalFind != null && isLiteralReplacement(replacement);
+
+            if ( literalPass != null && ! (literal && literalPass.canAdd(literalFind, replacement))) {
+                passes.add(literalPass.compile());
+                literalPass = null;
+            }
+
+            if ( literal ) {
+                if ( literalPass == null ) {
+                    literalPass = new LiteralPass();
+                }
+                literalPass.add(literalFind, replacement);
+            } else {
+                passes.add(new RegexPass(Pattern.compile(findPatterns.get(loop)), replacement));
+            }
+        }
+        if ( literalPass != null ) {
+            passes.add(literalPass.compile());
+        }
+    }
+
+    public String migrate(String configKey, String source) {
+        ConfigLogImplementation.logMethods.info("Migrating " + configKey + " configuration to version " + versionTarget + " using combined regular expression strategy with " + passes.size() + " passes");
+        for ( Pass p : passes) {
+            source = p.apply(source);
+        }
+        return source;
+    }
+
+    /**
+     * @return the number of passes made over the config
+     */
+    public int getPassCount() {
+        return passes.size();
+    }
+
+    public String toString() {
+        return "CombinedRegexMigrationStrategy{passes=" + passes + "}";
+    }
+
+    private static List<String> getFindPatterns(String[] arguments) {
+        if ( arguments.length % 2 != 0 ) {
+            throw new IllegalArgumentException("CombinedRegexMigrationStrategy requires pairs of find pattern and replacement");
+        }
+        List<String> result = new ArrayList<String>();
+        for ( int loop = 0; loop < arguments.length; loop += 2) {
+            result.add(arguments[loop]);
+        }
+        return result;
+    }
+
+    private static List<String> getReplacements(String[] arguments) {
+        List<String> result = new ArrayList<String>();
+        for ( int loop = 1; loop < arguments.length; loop += 2) {
+            result.add(arguments[loop]);
+        }
+        return result;
+    }
+
+    //@return the text matched by the regex if it matches only a literal string, otherwise null
+    private static String getLiteral(String regex) {
+        StringBuilder sb = new StringBuilder();
+        for ( int loop = 0; loop < regex.length(); loop++) {
+            char c = regex.charAt(loop);
+            if ( c == '\\' ) {
+                //an escaped symbol matches itself, but escaped letters and digits are character classes or references
+                loop++;
+                if ( loop == regex.length() || Character.isLetterOrDigit(regex.charAt(loop))) {
+                    return null;
+                }
+                sb.append(regex.charAt(loop));
+            } else if ( REGEX_METACHARS.indexOf(c) != -1 ) {
+                return null;
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.length() > 0 ? sb.toString() : null;
+    }
+
+    private static boolean isLiteralReplacement(String replacement) {
+        return replacement.indexOf('$') == -1 && replacement.indexOf('\\') == -1;
+    }
+
+    //@return true if a string could match at the same position as, or within, the other
+    private static boolean overlaps(String a, String b) {
+        boolean result = a.contains(b) || b.contains(a);
+        for ( int length = 1; length < Math.min(a.length(), b.length()) && ! result; length++) {
+            result = a.endsWith(b.substring(0, length)) || b.endsWith(a.substring(0, length));
+        }
+        return result;
+    }
+
+    private interface Pass {
+        String apply(String source);
+    }
+
+    private static class RegexPass implements Pass {
+        private final Pattern findPattern;
+        private final String replacement;
+
+        private RegexPass(Pattern findPattern, String replacement) {
+            this.findPattern = findPattern;
+            this.replacement = replacement;
+        }
+
+        public String apply(String source) {
+            return findPattern.matcher(source).replaceAll(replacement);
+        }
+
+        public String toString() {
+            return findPattern.pattern();
+        }
+    }
+
+    /**
+     * Literal renames which can be applied in a single pass
+     *
+     * Since no find string overlaps another, at most one can match at each position in the config, so the config is
+     * scanned once, checking only the find strings which start with the character at each position
+     */
+    private static class LiteralPass implements Pass {
+        private static final int INDEXED_CHARS = 128;
+
+        private final List<String> finds = new ArrayList<String>();
+        private final List<String> replacements = new ArrayList<String>();
+        private final Map<String, String> replacementsByFind = new HashMap<String, String>();
+        private final List<List<String>> findsByFirstChar = new ArrayList<List<String>>();
+        private final Map<Character, List<String>> findsByOtherFirstChar = new HashMap<Character, List<String>>();
+
+        //applying this rename in the same pass as the others must give the same result as applying it afterwards
+        public boolean canAdd(String find, String replacement) {
+            boolean result = true;
+            for ( int loop = 0; loop < finds.size() && result; loop++) {
+                //an earlier replacement must not create text which this find would match
+                String earlierReplacement = replacements.get(loop);
+                result = ! overlaps(finds.get(loop), find) && earlierReplacement.length() > 0 && ! overlaps(earlierReplacement, find);
+            }
+            return result;
+        }
+
+        public void add(String find, String replacement) {
+            finds.add(find);
+            replacements.add(replacement);
+            replacementsByFind.put(find, replacement);
+        }
+
+        public Pass compile() {
+            Pass result;
+            if ( finds.size() == 1 ) {
+                result = new RegexPass(Pattern.compile(Pattern.quote(finds.get(0))), replacements.get(0));
+            } else {
+                for ( int loop = 0; loop < INDEXED_CHARS; loop++) {
+                    findsByFirstChar.add(null);
+                }
+                for ( String find : finds) {
+                    char firstChar = find.charAt(0);
+                    List<String> candidates = getCandidates(firstChar);
+                    if ( candidates == null ) {
+                        candidates = new ArrayList<String>();
+                        if ( firstChar < INDEXED_CHARS ) {
+                            findsByFirstChar.set(firstChar, candidates);
+                        } else {
+                            findsByOtherFirstChar.put(firstChar, candidates);
+                        }
+                    }
+                    candidates.add(find);
+                }
+                result = this;
+            }
+            return result;
+        }
+
+        private List<String> getCandidates(char c) {
+            return c < INDEXED_CHARS ? findsByFirstChar.get(c) : findsByOtherFirstChar.get(c);
+        }
+
+        public String apply(String source) {
+            StringBuilder sb = null;
+            int lastEnd = 0;
+            int position = 0;
+            while ( position < source.length()) {
+                String match = null;
+                List<String> candidates = getCandidates(source.charAt(position));
+                if ( candidates != null ) {
+                    for ( int loop = 0; loop < candidates.size() && match == null; loop++) {
+                        if ( source.startsWith(candidates.get(loop), position)) {
+                            match = candidates.get(loop);
+                        }
+                    }
+                }
+
+                if ( match != null ) {
+                    if ( sb == null ) {
+                        sb = new StringBuilder(source.length());
+                    }
+                    sb.append(source, lastEnd, position);
+                    sb.append(replacementsByFind.get(match));
+                    position += match.length();
+                    lastEnd = position;
+                } else {
+                    position++;
+                }
+            }
+
+            String result = source;
+            if ( sb != null ) {
+                sb.append(source, lastEnd, source.length());
+                result = sb.toString();
+            }
+            return result;
+        }
+
+        public String toString() {
+            return finds.toString();
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package od.configutil.migration;
+
+import org.w3c.dom.Document;
+
+/**
+ * A migration strategy which can migrate a config already parsed into a DOM
+ *
+ * When a MigrationPlan contains consecutive DomMigrationStrategy, the config is parsed once, each strategy
+ * migrates the same DOM in turn, and the config is only serialized back to a String after the last of them
+ */
+public interface DomMigrationStrategy extends ConfigMigrationStategy {
+
+    /**
+     * @return the migrated document, which may be the document supplied after modification, or a new document
+     */
+    Document migrate(String configKey, Document document);
+
+}
@@ -0,0 +1,233 @@
+package od.configutil.migration;
+
+import od.configutil.util.ConfigLogImplementation;
+import org.w3c.dom.Document;
+
+import javax.xml.stream.XMLEventReader;
+import javax.xml.transform.TransformerException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+
+/**
+ * An immutable, ordered list of the migration strategies required to migrate a config from fromVersion to toVersion
+ *
+ * A plan is compiled once from the migrations map, after which migrating a config requires no map traversal,
+ * and the plan may be shared between threads (provided the strategies it contains are themselves thread safe)
+ *
+ * Where the plan contains a run of consecutive DomMigrationStrategy, the config is parsed once for the whole run and
+ * serialized once at the end, rather than each strategy parsing and serializing the config in turn.
+ * An XsltMigrationStrategy writes the config itself using its xsl:output settings where it ends the run, or where those
+ * settings would change the config seen by the strategies after it, in which case the rest of the run parses its output.
+ * Similarly, a run of consecutive StreamingMigrationStrategy are chained, so that the config is streamed through
+ * all of them in a single pass.
+ * A run of consecutive RegexMigrationStrategy is replaced by a CombinedRegexMigrationStrategy, which applies literal
+ * renames from the whole run in a single pass over the config
+ */
+public final class MigrationPlan {
+
+    private final long fromVersion;
+    private final long toVersion;
+    private final long[] strategyVersions;
+    private final ConfigMigrationStategy[] strategies;
+    //for each strategy, the index after the last consecutive strategy of the same xml type starting at that strategy
+    private final int[] xmlRunEnds;
+
+    private MigrationPlan(long fromVersion, long toVersion, long[] strategyVersions, ConfigMigrationStategy[] strategies) {
+        this.fromVersion = fromVersion;
+        this.toVersion = toVersion;
+        this.strategyVersions = strategyVersions;
+        this.strategies = strategies;
+        this.xmlRunEnds = new int[strategies.length];
+        int runEnd = strategies.length;
+        for ( int loop = strategies.length - 1; loop >= 0; loop--) {
+            boolean sameTypeAsNext = loop + 1 < strategies.length && getXmlType(strategies[loop]) == getXmlType(strategies[loop + 1]);
+            if ( getXmlType(strategies[loop]) == null ) {
+                runEnd = loop;
+            } else if ( ! sameTypeAsNext ) {
+                runEnd = loop + 1;
+            }
+            xmlRunEnds[loop] = runEnd;
+        }
+    }
+
+    //@return the interface which allows the strategy to be combined with others, or null
+    private static Class<?> getXmlType(ConfigMigrationStategy strategy) {
+        Class<?> result = null;
+        if ( strategy instanceof DomMigrationStrategy) {
+            result = DomMigrationStrategy.class;
+        } else if ( strategy instanceof StreamingMigrationStrategy) {
+            result = StreamingMigrationStrategy.class;
+        }
+        return result;
+    }
+
+    /**
+     * Compile a plan to migrate a config from fromVersion to the latest version in migrations
+     * The migrations map is not modified
+     */
+    public static MigrationPlan compile(SortedMap<Long, List<ConfigMigrationStategy>> migrations, long fromVersion) {
+        List<Long> versions = new ArrayList<Long>();
+        List<ConfigMigrationStategy> strategies = new ArrayList<ConfigMigrationStategy>();
+        //we are already at fromVersion patch level, so only include migrations for later versions
+        List<RegexMigrationStrategy> regexRun = new ArrayList<RegexMigrationStrategy>();
+        for (Map.Entry<Long, List<ConfigMigrationStategy>> entry : migrations.tailMap(fromVersion + 1).entrySet() ) {
+            for (ConfigMigrationStategy s : entry.getValue()) {
+                //a subclass may override migrate, so only plain regex strategies can be combined
+                boolean combinable = s.getClass() == RegexMigrationStrategy.class;
+                if ( ! combinable ) {
+                    addRegexRun(regexRun, versions, strategies);
+                }
+                versions.add(entry.getKey());
+                if ( combinable ) {
+                    regexRun.add((RegexMigrationStrategy)s);
+                } else {
+                    strategies.add(s);
+                }
+            }
+        }
+        addRegexRun(regexRun, versions, strategies);
+
+        long[] strategyVersions = new long[versions.size()];
+        for ( int loop=0; loop < strategyVersions.length; loop++) {
+            strategyVersions[loop] = versions.get(loop);
+        }
+        return new MigrationPlan(
+            fromVersion,
+            migrations.lastKey(),
+            strategyVersions,
+            strategies.toArray(new ConfigMigrationStategy[strategies.size()])
+        );
+    }
+
+    //add a run of consecutive regex strategies as a single strategy, the versions list already contains their versions
+    private static void addRegexRun(List<RegexMigrationStrategy> regexRun, List<Long> versions, List<ConfigMigrationStategy> strategies) {
+        if ( regexRun.size() == 1 ) {
+            strategies.add(regexRun.get(0));
+        } else if ( regexRun.size() > 1 ) {
+            List<String> findPatterns = new ArrayList<String>();
+            List<String> replacements = new ArrayList<String>();
+            for ( RegexMigrationStrategy s : regexRun) {
+                findPatterns.add(s.getFindPattern());
+                replacements.add(s.getReplaceString());
+            }
+            //the combined strategy migrates to the version of the last strategy in the run
+            long lastVersion = versions.remove(versions.size() - 1);
+            versions.subList(versions.size() - regexRun.size() + 1, versions.size()).clear();
+            versions.add(lastVersion);
+            strategies.add(new CombinedRegexMigrationStrategy(lastVersion, findPatterns, replacements));
+        }
+        regexRun.clear();
+    }
+
+    /**
+     * Run each migration strategy in the plan in turn
+     * @return the migrated config
+     */
+    public String migrate(String configName, String config) {
+        int loop = 0;
+        while ( loop < strategies.length) {
+            //a single xml strategy may as well parse and serialize the config itself
+            int xmlRunEnd = xmlRunEnds[loop];
+            if ( xmlRunEnd - loop > 1) {
+                config = strategies[loop] instanceof DomMigrationStrategy ?
+                    migrateDom(configName, config, loop, xmlRunEnd) :
+                    migrateStreaming(configName, config, loop, xmlRunEnd);
+                loop = xmlRunEnd;
+            } else {
+                config = migrate(configName, config, loop);
+                loop++;
+            }
+        }
+        return config;
+    }
+
+    private String migrate(String configName, String config, int strategyIndex) {
+        ConfigLogImplementation.logMethods.info("Migrating config " + configName + " to version " + strategyVersions[strategyIndex] + " using strategy " + strategies[strategyIndex]);
+        return strategies[strategyIndex].migrate(configName, config);
+    }
+
+    //parse the config once for a run of DomMigrationStrategy
+    private String migrateDom(String configName, String config, int start, int end) {
+        Document document = null;
+        try {
+            document = XmlProcessors.parse(config);
+        } catch (Exception e) {
+            ConfigLogImplementation.logMethods.warn("Could not parse config " + configName + " to migrate as xml, " + e);
+        }
+
+        String result = null;
+        if ( document != null ) {
+            try {
+                for ( int loop = start; loop < end && result == null; loop++) {
+                    ConfigLogImplementation.logMethods.info("Migrating config " + configName + " to version " + strategyVersions[loop] + " using strategy " + strategies[loop]);
+                    boolean last = loop + 1 == end;
+                    if ( strategies[loop] instanceof XsltMigrationStrategy &&
+                         (last || ((XsltMigrationStrategy)strategies[loop]).isOutputReparsedDifferently())) {
+                        //the stylesheet's xsl:output settings decide how the config is written, and so what the rest of the run sees
+                        result = ((XsltMigrationStrategy)strategies[loop]).migrateToString(configName, document);
+                        if ( ! last ) {
+                            result = migrateDom(configName, result, loop + 1, end);
+                        }
+                    } else {
+                        document = ((DomMigrationStrategy)strategies[loop]).migrate(configName, document);
+                        if ( last ) {
+                            result = XmlProcessors.toString(document.getDocumentElement());
+                        }
+                    }
+                }
+            } catch (TransformerException e) {
+                throw new RuntimeException(e);
+            }
+        } else {
+            result = migrateSeparately(configName, config, start, end);
+        }
+        return result;
+    }
+
+    //chain the readers for a run of StreamingMigrationStrategy, so the config is migrated in one pass
+    private String migrateStreaming(String configName, String config, int start, int end) {
+        String result;
+        try {
+            XMLEventReader eventReader = XmlProcessors.createEventReader(config);
+            for ( int loop = start; loop < end; loop++) {
+                ConfigLogImplementation.logMethods.info("Migrating config " + configName + " to version " + strategyVersions[loop] + " using strategy " + strategies[loop]);
+                eventReader = ((StreamingMigrationStrategy)strategies[loop]).migrate(configName, eventReader);
+            }
+            result = XmlProcessors.writeEvents(eventReader, config.length());
+        } catch (Exception e) {
+            ConfigLogImplementation.logMethods.warn("Could not stream config " + configName + " to migrate as xml, " + e);
+            result = migrateSeparately(configName, config, start, end);
+        }
+        return result;
+    }
+
+    //let each strategy handle a config which could not be parsed as it would if it were not part of a run
+    private String migrateSeparately(String configName, String config, int start, int end) {
+        for ( int loop = start; loop < end; loop++) {
+            config = migrate(configName, config, loop);
+        }
+        return config;
+    }
+
+    public long getFromVersion() {
+        return fromVersion;
+    }
+
+    public long getToVersion() {
+        return toVersion;
+    }
+
+    /**
+     * @return the number of migration strategies in this plan, zero if the config is already at the latest version
+     */
+    public int getStrategyCount() {
+        return strategies.length;
+    }
+
+    public String toString() {
+        return "MigrationPlan{" + fromVersion + "->" + toVersion + ", strategies=" + strategies.length + "}";
+    }
+}
@@ -0,0 +1,112 @@
+package od.configutil.migration;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Caches MigrationPlan keyed by from and to version
+ *
+ * The plans are compiled from a migrations map, which is expected to be unmodified once supplied. A MigrationSource
+ * which does not cache its migrations supplies a new map for each load, so when a different map instance is supplied
+ * the cached plans are kept if it contains the same versions and the same strategy instances, and are otherwise
+ * discarded, e.g. because the migrations have been reloaded
+ */
+public class MigrationPlanCache {
+
+    private volatile PlanSnapshot snapshot = new PlanSnapshot(null, new ConcurrentHashMap<PlanKey, MigrationPlan>());
+
+    public MigrationPlan getMigrationPlan(SortedMap<Long, List<ConfigMigrationStategy>> migrations, long fromVersion) {
+        PlanSnapshot s = snapshot;
+        if ( s.migrations != migrations) {
+            s = hasSameStrategies(s.migrations, migrations) ?
+                new PlanSnapshot(migrations, s.plans) :
+                new PlanSnapshot(migrations, new ConcurrentHashMap<PlanKey, MigrationPlan>());
+            snapshot = s;
+        }
+
+        PlanKey key = new PlanKey(fromVersion, migrations.lastKey());
+        MigrationPlan plan = s.plans.get(key);
+        if ( plan == null ) {
+            plan = MigrationPlan.compile(migrations, fromVersion);
+            MigrationPlan existing = s.plans.putIfAbsent(key, plan);
+            if ( existing != null ) {
+                plan = existing;
+            }
+        }
+        return plan;
+    }
+
+    public void clear() {
+        snapshot = new PlanSnapshot(null, new ConcurrentHashMap<PlanKey, MigrationPlan>());
+    }
+
+    //a plan only refers to the strategies in the map, so plans compiled from one map may be used for another with the same strategies
+    private static boolean hasSameStrategies(SortedMap<Long, List<ConfigMigrationStategy>> cached, SortedMap<Long, List<ConfigMigrationStategy>> migrations) {
+        boolean result = cached != null && cached.size() == migrations.size();
+        if ( result ) {
+            Iterator<Map.Entry<Long, List<ConfigMigrationStategy>>> cachedEntries = cached.entrySet().iterator();
+            for ( Map.Entry<Long, List<ConfigMigrationStategy>> entry : migrations.entrySet()) {
+                Map.Entry<Long, List<ConfigMigrationStategy>> cachedEntry = cachedEntries.next();
+                result = entry.getKey().equals(cachedEntry.getKey()) && isSameInstances(entry.getValue(), cachedEntry.getValue());
+                if ( ! result ) {
+                    break;
+                }
+            }
+        }
+        return result;
+    }
+
+    private static boolean isSameInstances(List<ConfigMigrationStategy> strategies, List<ConfigMigrationStategy> cachedStrategies) {
+        boolean result = strategies.size() == cachedStrategies.size();
+        for ( int loop = 0; result && loop < strategies.size(); loop++) {
+            result = strategies.get(loop) == cachedStrategies.get(loop);
+        }
+        return result;
+    }
+
+    private static class PlanSnapshot {
+        private final SortedMap<Long, List<ConfigMigrationStategy>> migrations;
+        private final ConcurrentMap<PlanKey, MigrationPlan> plans;
+
+        private PlanSnapshot(SortedMap<Long, List<ConfigMigrationStategy>> migrations, ConcurrentMap<PlanKey, MigrationPlan> plans) {
+            this.migrations = migrations;
+            this.plans = plans;
+        }
+    }
+
+    private static class PlanKey {
+        private final long fromVersion;
+        private final long toVersion;
+
+        private PlanKey(long fromVersion, long toVersion) {
+            this.fromVersion = fromVersion;
+            this.toVersion = toVersion;
+        }
+
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof PlanKey)) return false;
+
+            PlanKey planKey = (PlanKey) o;
+
+            if (fromVersion != planKey.fromVersion) return false;
+            if (toVersion != planKey.toVersion) return false;
+
+            return true;
+        }
+
+        public int hashCode() {
+            int result = (int) (fromVersion ^ (fromVersion >>> 32));
+            result = 29 * result + (int) (toVersion ^ (toVersion >>> 32));
+            return result;
+        }
+
+        public String toString() {
+            return fromVersion + "->" + toVersion;
+        }
+    }
+}
@@ -33,4 +33,12 @@ public class RegexMigrationStrategy implements ConfigMigrationStategy {
         ConfigLogImplementation.logMethods.info("Migrating " + configKey + " configuration to version " + versionTarget + " using regular expression strategy");
         return findPattern.matcher(source).replaceAll(replaceString);
     }
+
+    String getFindPattern() {
+        return findPattern.pattern();
+    }
+
+    String getReplaceString() {
+        return replaceString;
+    }
 }
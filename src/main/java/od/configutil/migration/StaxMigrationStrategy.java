@@ -0,0 +1,317 @@
+package od.configutil.migration;
+
+import od.configutil.util.ConfigLogImplementation;
+
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLEventFactory;
+import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.events.Attribute;
+import javax.xml.stream.events.EndElement;
+import javax.xml.stream.events.StartElement;
+import javax.xml.stream.events.XMLEvent;
+import java.util.*;
+
+/**
+ * A migration strategy for large configs, which renames or removes elements and attributes and replaces their values
+ * while streaming through the config with StAX, rather than building a DOM as XPathMigrationStrategy does.
+ * Memory use depends on the depth of the config rather than its size.
+ *
+ * Each argument is a rule in the form: action path [value]
+ *
+ * renameElement path newName
+ * removeElement path
+ * replaceText path value (replaces the content of the element with the text value)
+ * renameAttribute path/@attribute newName
+ * removeAttribute path/@attribute
+ * replaceAttribute path/@attribute value
+ *
+ * A path is a list of element names separated by /, where * matches any element name. A path starting with / is
+ * matched from the root element, otherwise it matches at any depth. Paths always match the element names in the
+ * config being migrated, before any rename. The value is the rest of the rule after the path, and may contain spaces.
+ *
+ * e.g. in configMigrations.xml
+ * <migrationClass>od.configutil.migration.StaxMigrationStrategy</migrationClass>
+ * <arguments>
+ *   <string>renameElement /workspace/oldName newName</string>
+ *   <string>removeAttribute timeSeries/@cache</string>
+ * </arguments>
+ */
+public class StaxMigrationStrategy implements StreamingMigrationStrategy {
+
+    private long versionTarget;
+    private List<Rule> elementRules = new ArrayList<Rule>();
+    private List<Rule> attributeRules = new ArrayList<Rule>();
+
+    public StaxMigrationStrategy(long versionTarget, String[] arguments) {
+        this.versionTarget = versionTarget;
+        for ( String argument : arguments) {
+            Rule rule = new Rule(argument);
+            if ( rule.attributeName != null ) {
+                attributeRules.add(rule);
+            } else {
+                elementRules.add(rule);
+            }
+        }
+    }
+
+    public String migrate(String configKey, String source) {
+        String result = source;
+        try {
+            result = XmlProcessors.writeEvents(migrate(configKey, XmlProcessors.createEventReader(source)), source.length());
+        } catch (Throwable t) {
+            ConfigLogImplementation.logMethods.error("Failed to migrate config using StAX strategy", t);
+        }
+        return result;
+    }
+
+    public XMLEventReader migrate(String configKey, XMLEventReader eventReader) {
+        ConfigLogImplementation.logMethods.info("Migrating " + configKey + " configuration to version " + versionTarget + " using StAX strategy");
+        return new MigratingEventReader(eventReader);
+    }
+
+    private enum Action {
+        renameElement(false, true),
+        removeElement(false, false),
+        replaceText(false, true),
+        renameAttribute(true, true),
+        removeAttribute(true, false),
+        replaceAttribute(true, true);
+
+        private final boolean attributeAction;
+        private final boolean requiresValue;
+
+        Action(boolean attributeAction, boolean requiresValue) {
+            this.attributeAction = attributeAction;
+            this.requiresValue = requiresValue;
+        }
+    }
+
+    private static class Rule {
+        private final Action action;
+        private final String[] elementPath;
+        private final boolean absolutePath;
+        private final String attributeName;
+        private final String value;
+
+        public Rule(String rule) {
+            String[] tokens = rule.trim().split("\\s+", 3);
+            if ( tokens.length < 2 ) {
+                throw new IllegalArgumentException("StAX migration rule should be in the form 'action path [value]': " + rule);
+            }
+
+            try {
+                action = Action.valueOf(tokens[0]);
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Unknown action " + tokens[0] + " in StAX migration rule: " + rule);
+            }
+
+            value = tokens.length > 2 ? tokens[2] : null;
+            if ( action.requiresValue && value == null ) {
+                throw new IllegalArgumentException("StAX migration rule requires a value: " + rule);
+            }
+
+            String path = tokens[1];
+            int attributeStart = path.lastIndexOf("/@");
+            if ( action.attributeAction != (attributeStart != -1)) {
+                throw new IllegalArgumentException("StAX migration rule " + action + " requires a path to " + (action.attributeAction ? "an attribute" : "an element") + ": " + rule);
+            }
+            if ( attributeStart != -1 ) {
+                attributeName = path.substring(attributeStart + 2);
+                path = path.substring(0, attributeStart);
+            } else {
+                attributeName = null;
+            }
+
+            absolutePath = path.startsWith("/");
+            elementPath = (absolutePath ? path.substring(1) : path).split("/");
+        }
+
+        //path is the names of the elements from the root down to the current element
+        public boolean matches(List<String> path) {
+            boolean result = absolutePath ? path.size() == elementPath.length : path.size() >= elementPath.length;
+            int offset = path.size() - elementPath.length;
+            for ( int loop = 0; loop < elementPath.length && result; loop++) {
+                result = elementPath[loop].equals("*") || elementPath[loop].equals(path.get(offset + loop));
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Applies the rules to each event as it is read from the source reader
+     */
+    private class MigratingEventReader implements XMLEventReader {
+
+        private final XMLEventReader source;
+        private final XMLEventFactory eventFactory = XmlProcessors.getEventFactory();
+        private final LinkedList<XMLEvent> pending = new LinkedList<XMLEvent>();
+        private final List<String> path = new ArrayList<String>();
+        private final LinkedList<QName> outputNames = new LinkedList<QName>();
+
+        public MigratingEventReader(XMLEventReader source) {
+            this.source = source;
+        }
+
+        public XMLEvent nextEvent() throws XMLStreamException {
+            if ( ! fill()) {
+                throw new NoSuchElementException();
+            }
+            return pending.removeFirst();
+        }
+
+        public boolean hasNext() {
+            try {
+                return fill();
+            } catch (XMLStreamException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        public XMLEvent peek() throws XMLStreamException {
+            return fill() ? pending.getFirst() : null;
+        }
+
+        public Object next() {
+            try {
+                return nextEvent();
+            } catch (XMLStreamException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        public String getElementText() throws XMLStreamException {
+            StringBuilder sb = new StringBuilder();
+            XMLEvent event = nextEvent();
+            while ( ! event.isEndElement()) {
+                if ( event.isCharacters()) {
+                    sb.append(event.asCharacters().getData());
+                } else if ( event.isStartElement()) {
+                    throw new XMLStreamException("Element text content may not contain start element", event.getLocation());
+                }
+                event = nextEvent();
+            }
+            return sb.toString();
+        }
+
+        public XMLEvent nextTag() throws XMLStreamException {
+            XMLEvent event = nextEvent();
+            while ( event.isCharacters() && event.asCharacters().isWhiteSpace() || event.getEventType() == XMLEvent.COMMENT) {
+                event = nextEvent();
+            }
+            if ( ! event.isStartElement() && ! event.isEndElement()) {
+                throw new XMLStreamException("Expected start or end element", event.getLocation());
+            }
+            return event;
+        }
+
+        public Object getProperty(String name) {
+            return source.getProperty(name);
+        }
+
+        public void close() throws XMLStreamException {
+            source.close();
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        //read from the source until there is a migrated event to return, or the source is exhausted
+        private boolean fill() throws XMLStreamException {
+            while ( pending.isEmpty() && source.hasNext()) {
+                XMLEvent event = source.nextEvent();
+                if ( event.isStartElement()) {
+                    startElement(event.asStartElement());
+                } else if ( event.isEndElement()) {
+                    EndElement end = event.asEndElement();
+                    path.remove(path.size() - 1);
+                    pending.add(eventFactory.createEndElement(outputNames.removeLast(), end.getNamespaces()));
+                } else {
+                    pending.add(event);
+                }
+            }
+            return ! pending.isEmpty();
+        }
+
+        private void startElement(StartElement start) throws XMLStreamException {
+            path.add(start.getName().getLocalPart());
+
+            QName name = start.getName();
+            boolean remove = false;
+            String replacementText = null;
+            for ( Rule rule : elementRules) {
+                if ( rule.matches(path)) {
+                    switch (rule.action) {
+                        case removeElement:
+                            remove = true;
+                            break;
+                        case renameElement:
+                            name = new QName(name.getNamespaceURI(), rule.value, name.getPrefix());
+                            break;
+                        case replaceText:
+                            replacementText = rule.value;
+                            break;
+                    }
+                }
+            }
+
+            if ( remove ) {
+                skipElementContent();
+                path.remove(path.size() - 1);
+            } else {
+                pending.add(eventFactory.createStartElement(name, migrateAttributes(start), start.getNamespaces()));
+                if ( replacementText != null ) {
+                    skipElementContent();
+                    pending.add(eventFactory.createCharacters(replacementText));
+                    pending.add(eventFactory.createEndElement(name, null));
+                    path.remove(path.size() - 1);
+                } else {
+                    outputNames.add(name);
+                }
+            }
+        }
+
+        private Iterator<Attribute> migrateAttributes(StartElement start) {
+            List<Attribute> attributes = new ArrayList<Attribute>();
+            Iterator<?> i = start.getAttributes();
+            while (i.hasNext()) {
+                Attribute attribute = (Attribute)i.next();
+                String sourceName = attribute.getName().getLocalPart();
+                for ( Rule rule : attributeRules) {
+                    if ( attribute != null && rule.attributeName.equals(sourceName) && rule.matches(path)) {
+                        switch (rule.action) {
+                            case removeAttribute:
+                                attribute = null;
+                                break;
+                            case renameAttribute:
+                                QName attributeName = attribute.getName();
+                                attribute = eventFactory.createAttribute(new QName(attributeName.getNamespaceURI(), rule.value, attributeName.getPrefix()), attribute.getValue());
+                                break;
+                            case replaceAttribute:
+                                attribute = eventFactory.createAttribute(attribute.getName(), rule.value);
+                                break;
+                        }
+                    }
+                }
+                if ( attribute != null ) {
+                    attributes.add(attribute);
+                }
+            }
+            return attributes.iterator();
+        }
+
+        //skip the events up to and including the end of the current element
+        private void skipElementContent() throws XMLStreamException {
+            int depth = 1;
+            while ( depth > 0) {
+                XMLEvent event = source.nextEvent();
+                if ( event.isStartElement()) {
+                    depth++;
+                } else if ( event.isEndElement()) {
+                    depth--;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package od.configutil.migration;
+
+import javax.xml.stream.XMLEventReader;
+
+/**
+ * A migration strategy which can migrate a config as a stream of StAX events, without building a DOM
+ *
+ * When a MigrationPlan contains consecutive StreamingMigrationStrategy, their readers are chained, so the config
+ * is parsed and written once, in a single pass through all of the strategies
+ */
+public interface StreamingMigrationStrategy extends ConfigMigrationStategy {
+
+    /**
+     * @return a reader which migrates the events from eventReader as they are read
+     */
+    XMLEventReader migrate(String configKey, XMLEventReader eventReader);
+
+}
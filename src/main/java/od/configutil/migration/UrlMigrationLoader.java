@@ -6,6 +6,7 @@ import od.configutil.util.ConfigUtilConstants;
 
 import java.io.*;
 import java.util.*;
+import java.net.JarURLConnection;
 import java.net.URL;
 
 /**
@@ -18,21 +19,27 @@ public abstract class UrlMigrationLoader implements MigrationSource {
 
     public UrlMigrationLoader() {}
 
-    private List<URL> cachedURL;
+    private volatile List<URL> cachedURL;
+
+    //the strategies created by the last load, keyed by class name, target version and arguments, which are reused by the
+    //next load for unchanged migrations so that a MigrationPlanCache can keep the plans compiled from them
+    private volatile Map<List<Object>, ConfigMigrationStategy> strategiesByDefinition = Collections.emptyMap();
 
     protected abstract List<URL> getURL();
 
     public SortedMap<Long, List<ConfigMigrationStategy>> loadConfigMigrations() throws Exception {
         List<URL> urls = cachedGetURL();
         SortedMap<Long, List<ConfigMigrationStategy>> configMigrations = new TreeMap<Long, List<ConfigMigrationStategy>>();
+        Map<List<Object>, ConfigMigrationStategy> loadedStrategies = new HashMap<List<Object>, ConfigMigrationStategy>();
         try {
             if ( urls.size() == 0) {
                 throw new Exception("No configMigration resources found");
             }
 
             for( URL url : urls ) {
-                readMigrations(configMigrations, url);
+                readMigrations(configMigrations, loadedStrategies, url);
             }
+            strategiesByDefinition = loadedStrategies;
         } catch (Exception e) {
             ConfigLogImplementation.logMethods.error("Failed to load config migrations", e);
             throw e;
@@ -40,7 +47,7 @@ public abstract class UrlMigrationLoader implements MigrationSource {
         return configMigrations;
     }
 
-    private void readMigrations(SortedMap<Long, List<ConfigMigrationStategy>> configMigrations, URL url) throws IOException {
+    private void readMigrations(SortedMap<Long, List<ConfigMigrationStategy>> configMigrations, Map<List<Object>, ConfigMigrationStategy> loadedStrategies, URL url) throws IOException {
         InputStreamReader r = null;
         try {
             r = new InputStreamReader(url.openStream(), ConfigUtilConstants.DEFAULT_TEXT_ENCODING);
@@ -58,7 +65,14 @@ public abstract class UrlMigrationLoader implements MigrationSource {
                     configMigrations.put(versionTarget, configMigrationForVersionTarget);
                 }
 
-                ConfigMigrationStategy configMigration = createMigrationStrategy(versionTarget, className, constructorArguments);
+                List<Object> definition = Arrays.<Object>asList(
+                    className, versionTarget, constructorArguments == null ? null : Arrays.asList(constructorArguments)
+                );
+                ConfigMigrationStategy configMigration = strategiesByDefinition.get(definition);
+                if ( configMigration == null ) {
+                    configMigration = createMigrationStrategy(versionTarget, className, constructorArguments);
+                }
+                loadedStrategies.put(definition, configMigration);
                 configMigrationForVersionTarget.add(configMigration);
             }
         } finally {
@@ -112,11 +126,41 @@ public abstract class UrlMigrationLoader implements MigrationSource {
         return x;
     }
 
+    /**
+     * @return the most recent last modified time of the migrations URLs, or 0 if this cannot be determined.
+     * Only file and jar URLs are checked, other protocols would require a remote request
+     */
+    public long getLastModified() {
+        long result = 0;
+        for ( URL url : cachedGetURL()) {
+            result = Math.max(result, getLastModified(url));
+        }
+        return result;
+    }
+
+    private long getLastModified(URL url) {
+        long result = 0;
+        try {
+            if ( "jar".equals(url.getProtocol())) {
+                url = ((JarURLConnection)url.openConnection()).getJarFileURL();
+            }
+            if ( "file".equals(url.getProtocol())) {
+                result = new File(url.toURI()).lastModified();
+            }
+        } catch (Exception e) {
+            ConfigLogImplementation.logMethods.warn("Could not determine last modified time for config migrations at " + url);
+        }
+        return result;
+    }
+
     private List<URL> cachedGetURL() {
-        if (cachedURL == null) {
-            cachedURL = getURL();
+        List<URL> urls = cachedURL;
+        if (urls == null) {
+            //if two threads race here the URLs may be looked up twice, which is harmless
+            urls = Collections.unmodifiableList(new ArrayList<URL>(getURL()));
+            cachedURL = urls;
         }
-        return cachedURL;
+        return urls;
     }
 
     //util to write the first config migrations file, solve the chicken an egg problem. After that we can do it manually
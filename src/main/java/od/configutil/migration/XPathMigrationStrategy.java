@@ -1,55 +1,73 @@
 package od.configutil.migration;
 
 import od.configutil.util.ConfigLogImplementation;
-import od.configutil.util.ConfigUtilConstants;
+import org.w3c.dom.Document;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
-import org.w3c.dom.Document;
 
-import javax.xml.xpath.XPath;
-import javax.xml.xpath.XPathFactory;
 import javax.xml.xpath.XPathConstants;
+import javax.xml.xpath.XPathExpression;
 import javax.xml.xpath.XPathExpressionException;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.transform.TransformerFactory;
-import javax.xml.transform.Transformer;
-import javax.xml.transform.OutputKeys;
-import javax.xml.transform.stream.StreamResult;
-import javax.xml.transform.dom.DOMSource;
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 
 /**
  * This strategy allows you to find a section of XML using an XPath query and then replace it's
  *
+ * The XPath expression is compiled once for each thread which runs the migration, and the XML parser and
+ * serializer are reused by each thread, so the strategy may be run concurrently from several threads
+ *
  * @author James Langley
  */
-public class XPathMigrationStrategy implements ConfigMigrationStategy {
+public class XPathMigrationStrategy implements DomMigrationStrategy {
 
     private static final String REMOVE_NODE = "REMOVE NODE";
     private long versionTarget;
     private String xpathExpression;
     private String replacementString;
+    private boolean removeNode;
+
+    //XPathExpression is not thread safe, so each thread compiles its own
+    private final ThreadLocal<XPathExpression> compiledExpression = new ThreadLocal<XPathExpression>();
 
     public XPathMigrationStrategy(long versionTarget, String[] arguments) {
         this.versionTarget = versionTarget;
         this.xpathExpression = arguments[0];
         this.replacementString = arguments[1];
+        this.removeNode = replacementString.trim().equalsIgnoreCase(REMOVE_NODE);
+
+        //compile now, so an invalid expression is reported when the migrations are loaded
+        try {
+            compiledExpression.set(XmlProcessors.compileXPath(xpathExpression));
+        } catch (XPathExpressionException e) {
+            ConfigLogImplementation.logMethods.error("Invalid XPath expression " + xpathExpression + " in config migration to version " + versionTarget, e);
+        }
     }
 
     public String migrate(String configKey, String source) {
+        Document document;
+        try {
+            document = XmlProcessors.parse(source);
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+
+        migrate(configKey, document);
+
+        try {
+            return XmlProcessors.toString(document.getDocumentElement());
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public Document migrate(String configKey, Document document) {
         ConfigLogImplementation.logMethods.info("Patching " + configKey + " configuration to version " + versionTarget + " with XPath strategy");
-        Node rootNode = null;
         try {
-            rootNode = stringToXML(source);
-            XPath xpath = XPathFactory.newInstance().newXPath();
-            NodeList nodeList = (NodeList) xpath.evaluate(xpathExpression, rootNode, XPathConstants.NODESET);
+            NodeList nodeList = (NodeList) getCompiledExpression().evaluate(document.getDocumentElement(), XPathConstants.NODESET);
+            ConfigLogImplementation.logMethods.debug("XPath " + xpathExpression + " matched " + nodeList.getLength() + " nodes");
 
             for (int i = 0; i < nodeList.getLength(); i++) {
                 Node item = nodeList.item(i);
-                System.out.println(item.toString());
-                if ( replacementString.trim().equalsIgnoreCase(REMOVE_NODE)) {
+                if ( removeNode ) {
                     item.getParentNode().removeChild(item);
                 } else {
                     item.setNodeValue(replacementString);
@@ -58,32 +76,15 @@ public class XPathMigrationStrategy implements ConfigMigrationStategy {
         } catch (XPathExpressionException e) {
             ConfigLogImplementation.logMethods.error("Error in XPath config migration", e);
         }
-        return xmlToString(rootNode);
-    }
-
-    private Node stringToXML(String source) {
-        try {
-            DocumentBuilderFactory documentBuilderFactory = DocumentBuilderFactory.newInstance();
-            DocumentBuilder documentBuilder = documentBuilderFactory.newDocumentBuilder();
-            Document document = documentBuilder.parse(new ByteArrayInputStream(source.getBytes()));
-            return document.getDocumentElement();
-        } catch (Exception e) {
-            throw new RuntimeException(e);
-        }
+        return document;
     }
 
-    private String xmlToString(Node node) {
-        try {
-            TransformerFactory transformerFactory = TransformerFactory.newInstance();
-            Transformer transformer = transformerFactory.newTransformer();
-            transformer.setOutputProperty(OutputKeys.INDENT, "yes");
-            transformer.setOutputProperty(OutputKeys.METHOD, "xml");
-            transformer.setOutputProperty(OutputKeys.ENCODING, ConfigUtilConstants.DEFAULT_TEXT_ENCODING);
-            ByteArrayOutputStream bos = new ByteArrayOutputStream();
-            transformer.transform(new DOMSource(node), new StreamResult(bos));
-            return bos.toString();
-        } catch (Exception e) {
-            throw new RuntimeException(e);
+    private XPathExpression getCompiledExpression() throws XPathExpressionException {
+        XPathExpression expression = compiledExpression.get();
+        if ( expression == null ) {
+            expression = XmlProcessors.compileXPath(xpathExpression);
+            compiledExpression.set(expression);
         }
+        return expression;
     }
 }
@@ -0,0 +1,144 @@
+package od.configutil.migration;
+
+import od.configutil.util.ConfigUtilConstants;
+import org.w3c.dom.Document;
+import org.w3c.dom.Node;
+import org.xml.sax.InputSource;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerConfigurationException;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+import javax.xml.stream.XMLEventFactory;
+import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.XMLEventWriter;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.xpath.XPathExpression;
+import javax.xml.xpath.XPathExpressionException;
+import javax.xml.xpath.XPathFactory;
+import java.io.StringReader;
+import java.io.StringWriter;
+
+/**
+ * Parses and serializes config XML for the XML based migration strategies
+ *
+ * DocumentBuilder, XPath, Transformer and StAX factory instances are expensive to create and are not guaranteed
+ * to be thread safe, so each thread creates its own once and reuses it for every migration
+ */
+final class XmlProcessors {
+
+    private static final ThreadLocal<DocumentBuilder> documentBuilders = new ThreadLocal<DocumentBuilder>() {
+        protected DocumentBuilder initialValue() {
+            try {
+                //namespace aware, so a stylesheet migrating the DOM sees the same document as it would parsing the config itself
+                DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+                factory.setNamespaceAware(true);
+                return factory.newDocumentBuilder();
+            } catch (ParserConfigurationException e) {
+                throw new RuntimeException("Could not create DocumentBuilder", e);
+            }
+        }
+    };
+
+    private static final ThreadLocal<XPathFactory> xpathFactories = new ThreadLocal<XPathFactory>() {
+        protected XPathFactory initialValue() {
+            return XPathFactory.newInstance();
+        }
+    };
+
+    //writes a DOM out as indented xml
+    private static final ThreadLocal<Transformer> transformers = new ThreadLocal<Transformer>() {
+        protected Transformer initialValue() {
+            try {
+                Transformer transformer = TransformerFactory.newInstance().newTransformer();
+                transformer.setOutputProperty(OutputKeys.INDENT, "yes");
+                transformer.setOutputProperty(OutputKeys.METHOD, "xml");
+                transformer.setOutputProperty(OutputKeys.ENCODING, ConfigUtilConstants.DEFAULT_TEXT_ENCODING);
+                return transformer;
+            } catch (TransformerConfigurationException e) {
+                throw new RuntimeException("Could not create Transformer", e);
+            }
+        }
+    };
+
+    private static final ThreadLocal<XMLInputFactory> xmlInputFactories = new ThreadLocal<XMLInputFactory>() {
+        protected XMLInputFactory initialValue() {
+            XMLInputFactory factory = XMLInputFactory.newInstance();
+            factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+            return factory;
+        }
+    };
+
+    private static final ThreadLocal<XMLOutputFactory> xmlOutputFactories = new ThreadLocal<XMLOutputFactory>() {
+        protected XMLOutputFactory initialValue() {
+            return XMLOutputFactory.newInstance();
+        }
+    };
+
+    private static final ThreadLocal<XMLEventFactory> xmlEventFactories = new ThreadLocal<XMLEventFactory>() {
+        protected XMLEventFactory initialValue() {
+            return XMLEventFactory.newInstance();
+        }
+    };
+
+    private XmlProcessors() {
+    }
+
+    /**
+     * Parse the config from its chars, rather than converting it to bytes using the platform encoding
+     */
+    public static Document parse(String source) throws Exception {
+        DocumentBuilder documentBuilder = documentBuilders.get();
+        try {
+            return documentBuilder.parse(new InputSource(new StringReader(source)));
+        } finally {
+            documentBuilder.reset();
+        }
+    }
+
+    public static String toString(Node node) throws TransformerException {
+        StringWriter writer = new StringWriter();
+        transformers.get().transform(new DOMSource(node), new StreamResult(writer));
+        return writer.toString();
+    }
+
+    /**
+     * @return an expression compiled for the calling thread, XPathExpression is not thread safe
+     */
+    public static XPathExpression compileXPath(String expression) throws XPathExpressionException {
+        return xpathFactories.get().newXPath().compile(expression);
+    }
+
+    public static XMLEventReader createEventReader(String source) throws XMLStreamException {
+        return xmlInputFactories.get().createXMLEventReader(new StringReader(source));
+    }
+
+    /**
+     * Write all the events from eventReader
+     * @return the xml written
+     */
+    public static String writeEvents(XMLEventReader eventReader, int expectedLength) throws XMLStreamException {
+        StringWriter writer = new StringWriter(expectedLength);
+        XMLEventWriter eventWriter = xmlOutputFactories.get().createXMLEventWriter(writer);
+        try {
+            eventWriter.add(eventReader);
+            eventWriter.flush();
+        } finally {
+            eventWriter.close();
+            eventReader.close();
+        }
+        return writer.toString();
+    }
+
+    public static XMLEventFactory getEventFactory() {
+        return xmlEventFactories.get();
+    }
+}
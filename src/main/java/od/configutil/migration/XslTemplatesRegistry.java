@@ -0,0 +1,77 @@
+package od.configutil.migration;
+
+import od.configutil.util.ConfigLogImplementation;
+
+import javax.xml.transform.Templates;
+import javax.xml.transform.TransformerConfigurationException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.stream.StreamSource;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A shared registry of compiled xsl stylesheets, keyed by classpath resource name
+ *
+ * Compiling a stylesheet costs far more than running it, so each stylesheet is compiled once into Templates.
+ * Templates are thread safe and may be shared by all the XsltMigrationStrategy which use the stylesheet,
+ * each migration creates a cheap Transformer from them
+ */
+public class XslTemplatesRegistry {
+
+    private static final ConcurrentMap<String, Templates> templatesByResource = new ConcurrentHashMap<String, Templates>();
+
+    /**
+     * @return Templates compiled from the xsl resource, or null if the resource was not found in the classpath
+     * @throws TransformerConfigurationException if the stylesheet could not be compiled
+     */
+    public static Templates getTemplates(String xslResourceInClassPath) throws TransformerConfigurationException {
+        Templates templates = templatesByResource.get(xslResourceInClassPath);
+        if ( templates == null ) {
+            templates = compile(xslResourceInClassPath);
+            if ( templates != null ) {
+                Templates existing = templatesByResource.putIfAbsent(xslResourceInClassPath, templates);
+                if ( existing != null ) {
+                    templates = existing;
+                }
+            }
+        }
+        return templates;
+    }
+
+    /**
+     * Discard the compiled stylesheets, so that they are compiled again when next used
+     */
+    public static void clear() {
+        templatesByResource.clear();
+    }
+
+    private static Templates compile(String xslResourceInClassPath) throws TransformerConfigurationException {
+        Templates result = null;
+        URL xslUrl = XslTemplatesRegistry.class.getResource(xslResourceInClassPath);
+        if ( xslUrl != null ) {
+            ConfigLogImplementation.logMethods.debug("Compiling xsl stylesheet " + xslUrl);
+            InputStream xslInputStream = null;
+            try {
+                xslInputStream = xslUrl.openStream();
+                //the system id allows the stylesheet to include or import others relative to its location
+                StreamSource xslSource = new StreamSource(xslInputStream, xslUrl.toExternalForm());
+                //TransformerFactory is not thread safe, but is only used here to compile each stylesheet once
+                result = TransformerFactory.newInstance().newTemplates(xslSource);
+            } catch (IOException e) {
+                throw new TransformerConfigurationException("Could not read xsl stylesheet " + xslUrl, e);
+            } finally {
+                if ( xslInputStream != null ) {
+                    try {
+                        xslInputStream.close();
+                    } catch (IOException e) {
+                        ConfigLogImplementation.logMethods.error("Failed to close xsl stylesheet " + xslUrl, e);
+                    }
+                }
+            }
+        }
+        return result;
+    }
+}
@@ -1,16 +1,25 @@
 package od.configutil.migration;
 
-import com.sun.org.apache.xalan.internal.xsltc.trax.TransformerFactoryImpl;
 import od.configutil.util.ConfigLogImplementation;
 
-import javax.xml.transform.TransformerFactory;
-import javax.xml.transform.Transformer;
-import javax.xml.transform.stream.StreamSource;
+import org.w3c.dom.Document;
+
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Result;
+import javax.xml.transform.Source;
+import javax.xml.transform.Templates;
+import javax.xml.transform.TransformerConfigurationException;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.dom.DOMResult;
+import javax.xml.transform.dom.DOMSource;
 import javax.xml.transform.stream.StreamResult;
-import java.io.ByteArrayInputStream;
-import java.io.InputStream;
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
+import javax.xml.transform.stream.StreamSource;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Properties;
+import java.util.Set;
 
 /**
  * Created by IntelliJ IDEA.
@@ -18,8 +27,18 @@ import java.io.IOException;
  * Date: 26-Aug-2008
  * Time: 16:33:37
  *
+ * Migrates a config using an xsl stylesheet from the classpath
+ * The stylesheet is compiled once and shared, see XslTemplatesRegistry
+ * Where the config is migrated as a DOM, the xsl:output settings only apply when the config is written,
+ * so a MigrationPlan writes the result of the last stylesheet in a run, or of any stylesheet whose output settings
+ * would change the config seen by the next strategy, using migrateToString
  */
-public class XsltMigrationStrategy implements ConfigMigrationStategy {
+public class XsltMigrationStrategy implements DomMigrationStrategy {
+
+    //xsl:output settings which only change how the xml is written, and not the document parsed from it
+    private static final Set<String> SERIALIZATION_ONLY_OUTPUT_KEYS = new HashSet<String>(Arrays.asList(
+        OutputKeys.ENCODING, OutputKeys.OMIT_XML_DECLARATION, OutputKeys.STANDALONE, OutputKeys.VERSION, OutputKeys.MEDIA_TYPE
+    ));
 
     private String xslResourceInClassPath;
     private long versionTarget;
@@ -30,35 +49,66 @@ public class XsltMigrationStrategy implements ConfigMigrationStategy {
     }
 
     public String migrate(String configKey, String source) {
-        ConfigLogImplementation.logMethods.info("Migrating " + configKey + " configuration to version " + versionTarget + " using xslt strategy " + xslResourceInClassPath);
-        String transformedSource = source;
+        StringWriter writer = new StringWriter(source.length());
+        return transform(configKey, new StreamSource(new StringReader(source)), new StreamResult(writer)) ? writer.toString() : source;
+    }
+
+    public Document migrate(String configKey, Document document) {
+        DOMResult result = new DOMResult();
+        return transform(configKey, new DOMSource(document), result) ? (Document)result.getNode() : document;
+    }
 
-        TransformerFactory tFactory = new TransformerFactoryImpl();
-        ByteArrayInputStream byteArrayInputStream = new ByteArrayInputStream(source.getBytes());
+    /**
+     * Migrate a config already parsed into a DOM, writing the result using the stylesheet's xsl:output settings,
+     * so the config is written exactly as migrate(String, String) would write it
+     */
+    String migrateToString(String configKey, Document document) throws TransformerException {
+        StringWriter writer = new StringWriter();
+        return transform(configKey, new DOMSource(document), new StreamResult(writer)) ?
+            writer.toString() :
+            XmlProcessors.toString(document.getDocumentElement());
+    }
 
-        InputStream xslInputStream = XsltMigrationStrategy.class.getResourceAsStream(xslResourceInClassPath);
-        if ( xslInputStream != null ) {
-            try {
-                ByteArrayOutputStream os = new ByteArrayOutputStream(1000);
-                Transformer transformer = tFactory.newTransformer(new StreamSource(xslInputStream));
-                transformer.transform(new StreamSource(byteArrayInputStream), new StreamResult(os));
-                transformedSource = os.toString();
-            } catch ( Throwable t) {
-                ConfigLogImplementation.logMethods.error("Failed to transform config using xsl strategy", t);
-            } finally {
-                try {
-                    xslInputStream.close();
-                    byteArrayInputStream.close();
-                } catch (IOException e) {
-                    ConfigLogImplementation.logMethods.error("Failed close stream after xsl config migration strategy", e);
+    /**
+     * @return true if the stylesheet's xsl:output settings could change the document parsed from the xml it writes,
+     * in which case a following strategy must migrate the written config rather than the DOM result
+     */
+    boolean isOutputReparsedDifferently() {
+        boolean result = false;
+        try {
+            Templates templates = XslTemplatesRegistry.getTemplates(xslResourceInClassPath);
+            if ( templates != null ) {
+                Properties outputProperties = templates.getOutputProperties();
+                for ( String key : outputProperties.stringPropertyNames()) {
+                    if ( ! SERIALIZATION_ONLY_OUTPUT_KEYS.contains(key) &&
+                         ! (OutputKeys.METHOD.equals(key) && "xml".equals(outputProperties.getProperty(key)))) {
+                        result = true;
+                        break;
+                    }
                 }
             }
-        } else {
-            ConfigLogImplementation.logMethods.error("Resource " + xslResourceInClassPath + " not found. Failed to transform config using xsl strategy");
+        } catch (TransformerConfigurationException e) {
+            //migrating the written config will report the error
+            result = true;
+        }
+        return result;
+    }
+
+    //@return true if the source was transformed, or false if the stylesheet could not be found or failed
+    private boolean transform(String configKey, Source source, Result result) {
+        ConfigLogImplementation.logMethods.info("Migrating " + configKey + " configuration to version " + versionTarget + " using xslt strategy " + xslResourceInClassPath);
+        boolean transformed = false;
+        try {
+            Templates templates = XslTemplatesRegistry.getTemplates(xslResourceInClassPath);
+            if ( templates != null ) {
+                templates.newTransformer().transform(source, result);
+                transformed = true;
+            } else {
+                ConfigLogImplementation.logMethods.error("Resource " + xslResourceInClassPath + " not found. Failed to transform config using xsl strategy");
+            }
+        } catch ( Throwable t) {
+            ConfigLogImplementation.logMethods.error("Failed to transform config using xsl strategy", t);
         }
-        //System.out.println("----------------------------------------------->");
-        //System.out.println(transformedSource);
-        //System.out.println("----------------------------------------------->");
-        return transformedSource;
+        return transformed;
     }
 }
@@ -1,12 +1,11 @@
 package od.configutil.serializer;
 
 import od.configutil.util.ConfigUtilConstants;
+import org.xml.sax.InputSource;
 
 import java.beans.XMLDecoder;
 import java.beans.XMLEncoder;
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
-import java.io.UnsupportedEncodingException;
+import java.io.*;
 
 /**
  * Created by IntelliJ IDEA.
@@ -14,7 +13,7 @@ import java.io.UnsupportedEncodingException;
  * Date: 29-Apr-2010
  * Time: 16:55:29
  */
-public class BeanPersistenceSerializer implements ConfigSerializer {
+public class BeanPersistenceSerializer implements StreamingConfigSerializer {
 
     public String serialize(Object configObject) throws UnsupportedEncodingException {
         ByteArrayOutputStream bos = new ByteArrayOutputStream(1024);
@@ -30,4 +29,18 @@ public class BeanPersistenceSerializer implements ConfigSerializer {
         XMLDecoder d = new XMLDecoder(bis);
         return (V)d.readObject();
     }
+
+    public void serialize(Object configObject, Writer writer) throws IOException {
+        //XMLEncoder writes UTF-8, which we decode as it is written rather than buffering the whole config
+        //closing the encoder writes the closing root tag, and closing WriterOutputStream does not close the writer
+        WriterOutputStream os = new WriterOutputStream(writer, ConfigUtilConstants.DEFAULT_TEXT_ENCODING);
+        XMLEncoder encoder = new XMLEncoder(os);
+        encoder.writeObject(configObject);
+        encoder.close();
+    }
+
+    public <V> V deserialize(Reader reader, Class<V> clazz) {
+        XMLDecoder d = new XMLDecoder(new InputSource(reader));
+        return clazz.cast(d.readObject());
+    }
 }
@@ -0,0 +1,124 @@
+package od.configutil.serializer;
+
+import com.thoughtworks.xstream.XStream;
+import com.thoughtworks.xstream.io.binary.BinaryStreamReader;
+import com.thoughtworks.xstream.io.binary.BinaryStreamWriter;
+import com.thoughtworks.xstream.io.copy.HierarchicalStreamCopier;
+import com.thoughtworks.xstream.io.xml.DomDriver;
+import com.thoughtworks.xstream.io.xml.PrettyPrintWriter;
+
+import java.io.*;
+import java.util.Base64;
+
+/**
+ * A compact serializer which writes the same hierarchy of nodes as XStreamSeralizer, but using XStream's binary
+ * format rather than XML. Each node and attribute name is written once and afterwards referred to by a numeric id,
+ * and there is no markup or indentation, so configs are smaller and quicker to save and load.
+ *
+ * Configs are saved as text, so the binary config is Base64 encoded after a prefix which identifies the format.
+ * The version header is written by the sink as for any other config.
+ * Base64 adds a third to the size of the binary config, even so a config with a list of a few beans is written in
+ * less than half the characters of the XML (a bean with no properties is slightly larger than its XML).
+ * The Base64 is written without line breaks, configs written with MIME line breaks by earlier versions can still be read
+ *
+ * Configs which were saved as XML by XStreamSeralizer can still be deserialized. Config migrations work on XML, so
+ * before migrating a binary config ConfigManager converts it to the XML which XStreamSeralizer would have written
+ * (see toMigratableXml), which means existing XPath and regex migrations continue to work. A migrated config is deserialized
+ * from XML, and saved as binary the next time it is saved.
+ */
+public class BinaryXStreamSerializer implements StreamingConfigSerializer, MigratableConfigSerializer {
+
+    public static final String BINARY_PREFIX = "xstream-binary;base64,";
+    private static final String BASE64_ENCODING = "US-ASCII";
+
+    private XStream xStream;
+
+    public BinaryXStreamSerializer() {
+        this(new XStream(new DomDriver()));
+    }
+
+    /**
+     * @param xStream, configured with any aliases and converters required, which are used for both the binary and
+     * XML formats
+     */
+    public BinaryXStreamSerializer(XStream xStream) {
+        this.xStream = xStream;
+    }
+
+    public String serialize(Object configObject) throws Exception {
+        StringWriter writer = new StringWriter();
+        serialize(configObject, writer);
+        return writer.toString();
+    }
+
+    public void serialize(Object configObject, Writer writer) throws Exception {
+        writer.write(BINARY_PREFIX);
+        WriterOutputStream writerStream = new WriterOutputStream(writer, BASE64_ENCODING);
+        BinaryStreamWriter binaryWriter = new BinaryStreamWriter(Base64.getEncoder().wrap(writerStream));
+        xStream.marshal(configObject, binaryWriter);
+        //closing the Base64 stream writes the final characters, but does not close the writer
+        binaryWriter.close();
+        writerStream.finish();
+    }
+
+    public <V> V deserialize(String serializedConfig, Class<V> clazz) throws Exception {
+        Object config;
+        if ( isBinary(serializedConfig)) {
+            config = xStream.unmarshal(new BinaryStreamReader(decode(serializedConfig)));
+        } else {
+            config = xStream.fromXML(serializedConfig);
+        }
+        return checkType(config, clazz);
+    }
+
+    /**
+     * The config must be read fully before it can be decoded
+     */
+    public <V> V deserialize(Reader reader, Class<V> clazz) throws Exception {
+        StringBuilder sb = new StringBuilder();
+        char[] buffer = new char[4096];
+        int charsRead;
+        while ((charsRead = reader.read(buffer)) != -1) {
+            sb.append(buffer, 0, charsRead);
+        }
+        return deserialize(sb.toString(), clazz);
+    }
+
+    public String toMigratableXml(String serializedConfig) {
+        return isBinary(serializedConfig) ? toXml(serializedConfig) : serializedConfig;
+    }
+
+    /**
+     * @return true if the serialized config was written by BinaryXStreamSerializer, rather than as XML
+     */
+    public static boolean isBinary(String serializedConfig) {
+        return serializedConfig.startsWith(BINARY_PREFIX);
+    }
+
+    /**
+     * @return the XML which XStreamSeralizer would have written for a config written by BinaryXStreamSerializer
+     */
+    public static String toXml(String serializedConfig) {
+        StringWriter writer = new StringWriter();
+        new HierarchicalStreamCopier().copy(new BinaryStreamReader(decode(serializedConfig)), new PrettyPrintWriter(writer));
+        return writer.toString();
+    }
+
+    private static InputStream decode(String serializedConfig) {
+        try {
+            byte[] base64 = serializedConfig.substring(BINARY_PREFIX.length()).getBytes(BASE64_ENCODING);
+            //the MIME decoder also reads configs with line breaks
+            return new ByteArrayInputStream(Base64.getMimeDecoder().decode(base64));
+        } catch (UnsupportedEncodingException e) {
+            //every Java platform is required to support US-ASCII
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private <V> V checkType(Object o, Class<V> clazz) throws XStreamSeralizer.XStreamSerializerException {
+        if ( ! clazz.isAssignableFrom(o.getClass())) {
+            throw new XStreamSeralizer.XStreamSerializerException("The deserialized config was not of the expected type " + clazz + ", instead it was of type " + o.getClass());
+        }
+        return clazz.cast(o);
+    }
+}
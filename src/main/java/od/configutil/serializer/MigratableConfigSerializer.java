@@ -0,0 +1,16 @@
+package od.configutil.serializer;
+
+/**
+ * A ConfigSerializer which may save configs in a format other than XML
+ *
+ * Config migrations work on XML, so before migrating a saved config ConfigManager asks the serializer to convert it
+ * to the equivalent XML, and the migrated config is then deserialized from XML
+ */
+public interface MigratableConfigSerializer extends ConfigSerializer {
+
+    /**
+     * @return the serialized config as XML to which the config migrations can be applied, or serializedConfig if it
+     * is already XML
+     */
+    String toMigratableXml(String serializedConfig);
+}
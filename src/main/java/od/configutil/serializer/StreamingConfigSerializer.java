@@ -0,0 +1,17 @@
+package od.configutil.serializer;
+
+import java.io.Reader;
+import java.io.Writer;
+
+/**
+ * A ConfigSerializer which can also serialize a config directly to a Writer, and deserialize from a Reader,
+ * without first creating a String containing the whole serialized config
+ *
+ * ConfigManager will use these methods when the ConfigSink or ConfigSource also supports streaming
+ */
+public interface StreamingConfigSerializer extends ConfigSerializer {
+
+    void serialize(Object configObject, Writer writer) throws Exception;
+
+    <V> V deserialize(Reader reader, Class<V> clazz) throws Exception;
+}
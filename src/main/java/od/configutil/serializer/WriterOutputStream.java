@@ -0,0 +1,96 @@
+package od.configutil.serializer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * An OutputStream which decodes the bytes written to it and passes the characters to a Writer,
+ * so that serializers which can only write bytes may write to a Writer using a fixed size buffer
+ *
+ * Closing the stream does not close the Writer
+ */
+class WriterOutputStream extends OutputStream {
+
+    private static final int BUFFER_SIZE = 4096;
+
+    private final Writer writer;
+    private final CharsetDecoder decoder;
+    private final ByteBuffer byteBuffer = ByteBuffer.allocate(BUFFER_SIZE);
+    private final CharBuffer charBuffer = CharBuffer.allocate(BUFFER_SIZE);
+    private boolean finished;
+
+    public WriterOutputStream(Writer writer, String encoding) {
+        this.writer = writer;
+        this.decoder = Charset.forName(encoding).newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    }
+
+    public void write(int b) throws IOException {
+        write(new byte[] { (byte)b }, 0, 1);
+    }
+
+    public void write(byte[] b, int off, int len) throws IOException {
+        while ( len > 0 ) {
+            int count = Math.min(len, byteBuffer.remaining());
+            byteBuffer.put(b, off, count);
+            off += count;
+            len -= count;
+            decode(false);
+        }
+    }
+
+    public void flush() throws IOException {
+        writeChars();
+        writer.flush();
+    }
+
+    /**
+     * Finish writing, the Writer is not closed, so a stream wrapping this one may be closed without closing the Writer
+     */
+    public void close() throws IOException {
+        finish();
+    }
+
+    /**
+     * Decode any remaining bytes and write them to the Writer, without closing the Writer
+     */
+    public void finish() throws IOException {
+        //the decoder cannot be flushed twice
+        if ( ! finished ) {
+            finished = true;
+            decode(true);
+            CoderResult r;
+            do {
+                r = decoder.flush(charBuffer);
+                writeChars();
+            } while (r.isOverflow());
+        }
+        writer.flush();
+    }
+
+    private void decode(boolean endOfInput) throws IOException {
+        byteBuffer.flip();
+        CoderResult r;
+        do {
+            r = decoder.decode(byteBuffer, charBuffer, endOfInput);
+            writeChars();
+        } while (r.isOverflow());
+        //keep any bytes from a partial multi-byte character until more input arrives
+        byteBuffer.compact();
+    }
+
+    private void writeChars() throws IOException {
+        if ( charBuffer.position() > 0 ) {
+            writer.write(charBuffer.array(), 0, charBuffer.position());
+            charBuffer.clear();
+        }
+    }
+}
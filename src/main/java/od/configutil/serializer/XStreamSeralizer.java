@@ -1,33 +1,137 @@
 package od.configutil.serializer;
 
 import com.thoughtworks.xstream.XStream;
+import com.thoughtworks.xstream.io.HierarchicalStreamDriver;
 import com.thoughtworks.xstream.io.xml.DomDriver;
+import com.thoughtworks.xstream.io.xml.StaxDriver;
+import com.thoughtworks.xstream.io.xml.XppDriver;
+import od.configutil.util.ConfigLogImplementation;
 import od.configutil.util.ConfigManagerException;
 
+import java.io.Reader;
+import java.io.Writer;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.HashSet;
+import java.util.Set;
+
 /**
  * Created by IntelliJ IDEA.
  * User: Nick Ebbutt
  * Date: 22-Nov-2010
  * Time: 14:43:07
+ *
+ * By default the XML is parsed with DomDriver, which builds a DOM for the whole config before unmarshalling it.
+ * XmlDriver.XPP or XmlDriver.STAX parse the config as a stream instead, which is quicker and uses less memory for
+ * large configs. XPP writes the same XML as DOM, STAX writes it without indentation
+ *
+ * XStream caches the mappings and reflection data for each class the first time it is used. Call warmUp with the
+ * config classes at startup so that this is not done by the first load. warmUp only fills these caches, the XML
+ * written is the same whether or not it is called. XStream annotations on the config classes are not processed
+ * unless processAnnotations is called, which may change the XML written
  */
-public class XStreamSeralizer implements ConfigSerializer {
+public class XStreamSeralizer implements StreamingConfigSerializer {
+
+    public enum XmlDriver {
+        DOM {
+            public HierarchicalStreamDriver createDriver() {
+                return new DomDriver();
+            }
+        },
+        XPP {
+            public HierarchicalStreamDriver createDriver() {
+                return new XppDriver();
+            }
+        },
+        STAX {
+            public HierarchicalStreamDriver createDriver() {
+                return new StaxDriver();
+            }
+        };
+
+        public abstract HierarchicalStreamDriver createDriver();
+    }
 
     private XStream xStream;
 
     public XStreamSeralizer() {
-        this(new XStream(new DomDriver()));
+        this(XmlDriver.DOM);
+    }
+
+    public XStreamSeralizer(XmlDriver xmlDriver) {
+        this(new XStream(xmlDriver.createDriver()));
     }
 
     public XStreamSeralizer(XStream xStream) {
         this.xStream = xStream;
     }
 
+    /**
+     * Use the XStream annotations of each config class, and the classes they reference, when serializing configs.
+     * Annotations such as aliases change the XML written, so configs saved before this was called may need a
+     * migration to load. Call this at startup before configs are loaded or saved
+     */
+    public void processAnnotations(Class<?>... configClasses) {
+        xStream.processAnnotations(configClasses);
+    }
+
+    /**
+     * Cache the converters and reflection data for each config class and the types of its fields, so that this is
+     * not done when the first config is loaded. This does not change the XML written
+     */
+    public void warmUp(Class<?>... configClasses) {
+        Set<Class<?>> warmedClasses = new HashSet<Class<?>>();
+        for ( Class<?> c : configClasses) {
+            try {
+                warmUp(c, warmedClasses);
+                //unmarshalling an empty instance of the config class initialises the remaining per class caches
+                xStream.fromXML(xStream.toXML(xStream.getReflectionProvider().newInstance(c)));
+            } catch (Throwable t) {
+                ConfigLogImplementation.logMethods.warn("Could not warm up XStream for config class " + c.getName() + ", " + t);
+            }
+        }
+        ConfigLogImplementation.logMethods.debug("Warmed up XStream for " + warmedClasses.size() + " classes");
+    }
+
+    private void warmUp(Class<?> c, Set<Class<?>> warmedClasses) {
+        while ( c.isArray()) {
+            c = c.getComponentType();
+        }
+
+        if ( ! c.isPrimitive() && warmedClasses.add(c)) {
+            xStream.getMapper().serializedClass(c);
+            xStream.getConverterLookup().lookupConverterForType(c);
+            //jdk types are handled by XStream's own converters, there is no need to visit their fields
+            if ( ! c.getName().startsWith("java.") && ! c.isInterface()) {
+                for ( Class<?> declaringClass = c; declaringClass != null && declaringClass != Object.class; declaringClass = declaringClass.getSuperclass()) {
+                    for ( Field f : declaringClass.getDeclaredFields()) {
+                        if ( ! Modifier.isStatic(f.getModifiers()) && ! Modifier.isTransient(f.getModifiers())) {
+                            xStream.getReflectionProvider().getField(declaringClass, f.getName());
+                            warmUp(f.getType(), warmedClasses);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
     public String serialize(Object configObject) throws Exception {
         return xStream.toXML(configObject);
     }
 
     public <V> V deserialize(String serializedConfig, Class<V> clazz) throws Exception {
-        Object o = xStream.fromXML(serializedConfig);
+        return checkType(xStream.fromXML(serializedConfig), clazz);
+    }
+
+    public void serialize(Object configObject, Writer writer) throws Exception {
+        xStream.toXML(configObject, writer);
+    }
+
+    public <V> V deserialize(Reader reader, Class<V> clazz) throws Exception {
+        return checkType(xStream.fromXML(reader), clazz);
+    }
+
+    private <V> V checkType(Object o, Class<V> clazz) throws XStreamSerializerException {
         if ( ! clazz.isAssignableFrom(o.getClass())) {
             throw new XStreamSerializerException("The deserialized config was not of the expected type " + clazz + ", instead it was of type " + o.getClass());
         }
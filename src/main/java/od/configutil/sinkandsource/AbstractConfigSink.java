@@ -1,20 +1,39 @@
 package od.configutil.sinkandsource;
 
+import od.configutil.metrics.ConfigMetricsImplementation;
+import od.configutil.util.ConfigLogImplementation;
 import od.configutil.util.ConfigManagerException;
+import od.configutil.util.ContentDigest;
 
 import java.io.*;
 import java.net.URL;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.Lock;
 
 /**
  * Created by IntelliJ IDEA.
  * User: nick
  * Date: 19-Nov-2010
  * Time: 23:56:31
- * 
+ *
+ * If skipUnchanged is set, a config is not written if the file already contains the same version and content.
+ * This requires the subclass to supply the config file by overriding getConfigFile
+ *
+ * If compressed is set, the config is written compressed after an uncompressed version header
  */
-public abstract class AbstractConfigSink implements ConfigSink {
+public abstract class AbstractConfigSink implements StreamingConfigSink {
 
     private String textFileEncoding;
+    private volatile boolean skipUnchanged;
+    private volatile boolean compressed;
+    //for each file written while skipUnchanged is set, the content written, so that we can usually skip reading it back
+    private final ConcurrentMap<String, WrittenFile> writtenFiles = new ConcurrentHashMap<String, WrittenFile>();
+    //a lock for each file written while skipUnchanged is set
+    private final ConfigNameLocks fileNameLocks = new ConfigNameLocks();
 
     public AbstractConfigSink(String textFileEncoding) {
         this.textFileEncoding = textFileEncoding;
@@ -23,24 +42,186 @@ public abstract class AbstractConfigSink implements ConfigSink {
     public URL saveConfiguration(ConfigData configuration) throws ConfigManagerException {
         String fileName = getConfigFileName(configuration.getConfigName(), configuration.getVersion());
         try {
-            return writeConfig(configuration, fileName);
+            URL result;
+            if ( skipUnchanged ) {
+                result = writeConfigIfChanged(configuration, fileName);
+            } else {
+                result = writeConfig(configuration, fileName);
+                recordBytesWritten(configuration, fileName);
+            }
+            return result;
         } catch ( Throwable t ) {
-            if ( t instanceof ConfigManagerException ) {
-                throw (ConfigManagerException)t; //re-throw to preserve stack
+            throw wrapException(t);
+        }
+    }
+
+    public URL saveConfiguration(String configName, long version, ConfigWriter configWriter) throws ConfigManagerException {
+        String fileName = getConfigFileName(configName, version);
+        try {
+            URL result;
+            if ( skipUnchanged ) {
+                //we need the whole config to compare it with the file
+                StringWriter w = new StringWriter();
+                configWriter.writeConfig(w);
+                result = writeConfigIfChanged(new ConfigData(configName, version, w.toString()), fileName);
             } else {
-                throw new ConfigManagerException("Error saving config", t);
+                result = writeConfig(configName, version, configWriter, fileName);
+                recordBytesWritten(configName, fileName);
             }
+            return result;
+        } catch ( Throwable t ) {
+            throw wrapException(t);
+        }
+    }
+
+    //the check, the write and recording the file written are made under one lock for the file, otherwise concurrent
+    //saves could record the digest of one config against the length and last modified time of the file written by another
+    private URL writeConfigIfChanged(ConfigData configuration, String fileName) throws Exception {
+        File file = getConfigFile(fileName);
+        URL result;
+        if ( file == null ) {
+            result = writeConfig(configuration, fileName);
+            recordBytesWritten(configuration, fileName);
+        } else {
+            ContentDigest digest = ContentDigest.of(configuration.getSerializedConfig());
+            Lock lock = fileNameLocks.getLock(fileName).writeLock();
+            lock.lock();
+            try {
+                if ( isUnchanged(file, fileName, configuration, digest)) {
+                    ConfigLogImplementation.logMethods.info("Configuration file at " + file + " is unchanged, not writing it");
+                    result = file.toURI().toURL();
+                } else {
+                    result = writeConfig(configuration, fileName);
+                    writtenFiles.put(fileName, new WrittenFile(file, configuration.getVersion(), digest));
+                    recordBytesWritten(configuration, fileName);
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+        return result;
+    }
+
+    private boolean isUnchanged(File file, String fileName, ConfigData configuration, ContentDigest digest) throws Exception {
+        boolean result = false;
+        if ( file.isFile()) {
+            WrittenFile writtenFile = writtenFiles.get(fileName);
+            if ( writtenFile != null && writtenFile.isUnmodified(file)) {
+                result = writtenFile.version == configuration.getVersion() && writtenFile.digest.equals(digest);
+            } else {
+                //we did not write the file, or it has been modified since, so compare with the file contents
+                ByteArrayOutputStream expected = new ByteArrayOutputStream();
+                writeConfigToStream(expected, configuration.getSerializedConfig(), configuration.getVersion());
+                result = file.length() == expected.size() && Arrays.equals(expected.toByteArray(), Files.readAllBytes(file.toPath()));
+                if ( result ) {
+                    writtenFiles.put(fileName, new WrittenFile(file, configuration.getVersion(), digest));
+                }
+            }
+        }
+        return result;
+    }
+
+    //the size of the config written is known if the sink writes to a file
+    private void recordBytesWritten(String configName, String fileName) {
+        File file = getConfigFile(fileName);
+        if ( file != null ) {
+            ConfigMetricsImplementation.metrics.recordBytesWritten(configName, file.length());
+        }
+    }
+
+    //if the sink does not write to a file, the size is found by writing the config again to a stream which counts it
+    private void recordBytesWritten(ConfigData configuration, String fileName) throws IOException {
+        File file = getConfigFile(fileName);
+        long bytesWritten;
+        if ( file != null ) {
+            bytesWritten = file.length();
+        } else {
+            CountingOutputStream countingStream = new CountingOutputStream();
+            writeConfigToStream(countingStream, configuration.getSerializedConfig(), configuration.getVersion());
+            bytesWritten = countingStream.byteCount;
+        }
+        ConfigMetricsImplementation.metrics.recordBytesWritten(configuration.getConfigName(), bytesWritten);
+    }
+
+    private ConfigManagerException wrapException(Throwable t) {
+        if ( t instanceof ConfigManagerException ) {
+            return (ConfigManagerException)t; //re-throw to preserve stack
+        } else {
+            return new ConfigManagerException("Error saving config", t);
         }
     }
 
     protected abstract String getConfigFileName(String configName, long version);
 
+    /**
+     * @return the file a config with fileName is written to, or null if the config is not written to a file,
+     * in which case the config is always written, even if skipUnchanged is set
+     */
+    protected File getConfigFile(String fileName) {
+        return null;
+    }
+
+    /**
+     * @param skipUnchanged if true, a config is not written if the file already contains the same version and content,
+     * which saves disk writes and rotating the backup file when a config is saved repeatedly without changes
+     *
+     * The content last written to each file is kept as a digest, and compared with the new content if the file
+     * length and last modified time are unchanged, otherwise the new content is compared with the file contents
+     */
+    public void setSkipUnchanged(boolean skipUnchanged) {
+        this.skipUnchanged = skipUnchanged;
+        if ( ! skipUnchanged ) {
+            writtenFiles.clear();
+        }
+    }
+
+    public boolean isSkipUnchanged() {
+        return skipUnchanged;
+    }
+
+    /**
+     * @param compressed if true, the config is compressed with GZIP after the version header, which is left uncompressed.
+     * AbstractConfigSource detects compressed configs when loading, so compressed and uncompressed configs may be mixed.
+     * Requires an encoding which writes ASCII characters as single bytes, such as the default UTF-8
+     */
+    public void setCompressed(boolean compressed) {
+        if ( compressed && ! AbstractConfigSource.isAsciiCompatible(Charset.forName(textFileEncoding))) {
+            throw new IllegalStateException("Compressed configs cannot be written in encoding " + textFileEncoding);
+        }
+        this.compressed = compressed;
+    }
+
+    public boolean isCompressed() {
+        return compressed;
+    }
+
     protected abstract URL writeConfig(ConfigData configuration, String fileName) throws Exception;
 
+    /**
+     * Write a config which is supplied by a ConfigWriter
+     * Subclasses should override this to write the config directly to their output. This default implementation
+     * writes the config to a String and calls writeConfig(ConfigData, String)
+     */
+    protected URL writeConfig(String configName, long version, ConfigWriter configWriter, String fileName) throws Exception {
+        StringWriter w = new StringWriter();
+        configWriter.writeConfig(w);
+        return writeConfig(new ConfigData(configName, version, w.toString()), fileName);
+    }
+
     protected void writeConfigToStream(OutputStream outStream, String text, long version) throws IOException {
         if (text == null) {
             throw new IllegalArgumentException("Text is null");
         }
+        try {
+            writeConfigToStream(outStream, new StringConfigWriter(text), version);
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException("Failed to write config", e);
+        }
+    }
+
+    protected void writeConfigToStream(OutputStream outStream, ConfigWriter configWriter, long version) throws Exception {
         BufferedWriter out = new BufferedWriter(new OutputStreamWriter(outStream, textFileEncoding));
         //write configVersion=versionId on the first line
         out.append("<!-- "); //use a comment format which works well with sgml and derivatives
@@ -49,7 +230,50 @@ public abstract class AbstractConfigSink implements ConfigSink {
         out.append(" -->");
         out.newLine();
 
-        out.write(text);
-        out.flush();
+        if ( compressed ) {
+            //the header is not compressed, so that the version can be read without decompressing the config
+            out.flush();
+            Writer compressedOut = new BufferedWriter(new OutputStreamWriter(ConfigCompression.compress(outStream), textFileEncoding));
+            try {
+                configWriter.writeConfig(compressedOut);
+            } finally {
+                //finishes the compressed data and releases the compressor, without closing outStream
+                compressedOut.close();
+            }
+        } else {
+            configWriter.writeConfig(out);
+            out.flush();
+        }
+    }
+
+    //counts the bytes written, without keeping them
+    private static class CountingOutputStream extends OutputStream {
+        private long byteCount;
+
+        public void write(int b) {
+            byteCount++;
+        }
+
+        public void write(byte[] b, int off, int len) {
+            byteCount += len;
+        }
+    }
+
+    private static class WrittenFile {
+        private final long length;
+        private final long lastModified;
+        private final long version;
+        private final ContentDigest digest;
+
+        public WrittenFile(File file, long version, ContentDigest digest) {
+            this.length = file.length();
+            this.lastModified = file.lastModified();
+            this.version = version;
+            this.digest = digest;
+        }
+
+        public boolean isUnmodified(File file) {
+            return file.length() == length && file.lastModified() == lastModified;
+        }
     }
 }
@@ -1,9 +1,12 @@
 package od.configutil.sinkandsource;
 
+import od.configutil.metrics.ConfigMetricsImplementation;
 import od.configutil.util.ConfigLogImplementation;
 import od.configutil.util.ConfigManagerException;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
 import java.util.*;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -15,17 +18,44 @@ import java.util.regex.Pattern;
  * Time: 23:40:46
  *
  * An abstract superclass for classes implementing ConfigSource
+ *
+ * Configs written compressed by AbstractConfigSink are detected and decompressed when they are read
  */
-public abstract class AbstractConfigSource implements ConfigSource {
+public abstract class AbstractConfigSource implements StreamingConfigSource, ProbingConfigSource {
+
+    /**
+     * Smaller files are read rather than mapped even in memory mapped mode, since mapping has a higher fixed cost
+     */
+    public static final int MEMORY_MAP_THRESHOLD = 256 * 1024;
+
+    /**
+     * The number of bytes read to check the version header of a config file, before the rest of the file is read
+     */
+    public static final int PROBE_SIZE = 128;
 
     private static Pattern configVersionPattern = Pattern.compile(CONFIG_VERSION_PREFIX + "(\\d+)");
     private String textFileEncoding;
+    private Charset charset;
+    private boolean asciiCompatibleEncoding;
+    private volatile boolean memoryMapped;
 
     public AbstractConfigSource(String textFileEncoding) {
         this.textFileEncoding = textFileEncoding;
+        this.charset = Charset.forName(textFileEncoding);
+        this.asciiCompatibleEncoding = isAsciiCompatible(charset);
     }
 
     public ConfigData loadConfiguration(String configName, SortedSet<Long> supportedVersions) throws ConfigManagerException {
+        try {
+            return loadConfiguration(configName, supportedVersions, configDataReader);
+        } catch (ConfigManagerException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new ConfigManagerException("Error loading " + configName + " configuration", e);
+        }
+    }
+
+    public <V> V loadConfiguration(String configName, SortedSet<Long> supportedVersions, ConfigReader<V> configReader) throws Exception {
         loadStarting(configName);
 
         //get a list of possible file names based on configName and supported versions
@@ -39,9 +69,11 @@ public abstract class AbstractConfigSource implements ConfigSource {
         List<String> fileNameList = getFileNames(configName, versionList);
 
         //check each file it turn to see if it contains an acceptable config/version and return the first found
-        ConfigData configuration = null;
+        //each file is opened once, and the version header is checked before the rest of the file is read, so
+        //files with an unsupported version are skipped without reading their body
+        V configuration = null;
         for ( String fileName : fileNameList ) {
-            configuration = readConfig(configName, fileName, supportedVersions);
+            configuration = readConfig(configName, fileName, supportedVersions, configReader);
             if ( configuration != null) {
                 break;
             }
@@ -49,6 +81,84 @@ public abstract class AbstractConfigSource implements ConfigSource {
         return configuration;
     }
 
+    public Map<String, Long> probeVersions(String configName, SortedSet<Long> supportedVersions) throws ConfigManagerException {
+        loadStarting(configName);
+        List<Long> versionList = new ArrayList<Long>(supportedVersions);
+        Collections.reverse(versionList);
+
+        Map<String, Long> result = new LinkedHashMap<String, Long>();
+        for ( String fileName : getFileNames(configName, versionList)) {
+            result.put(fileName, probeVersion(fileName));
+        }
+        return result;
+    }
+
+    /**
+     * Read the version header from the first PROBE_SIZE bytes of a config file
+     * @return the version, or -1 if the file could not be read or has no version header
+     */
+    protected long probeVersion(String fileName) {
+        long result = -1;
+        InputStream is = null;
+        try {
+            File file = getFile(fileName);
+            is = file == null ? getInputStream(fileName) : new FileInputStream(file);
+
+            if ( is != null ) {
+                byte[] prefix = new byte[PROBE_SIZE];
+                int length = 0;
+                int bytesRead = 0;
+                while ( length < prefix.length && bytesRead != -1) {
+                    bytesRead = is.read(prefix, length, prefix.length - length);
+                    if ( bytesRead > 0 ) {
+                        length += bytesRead;
+                    }
+                }
+                result = parseVersion(getFirstLine(new String(prefix, 0, length, charset)));
+            }
+        } catch (FileNotFoundException e) {
+            //the file does not exist or cannot be read, so has no version
+        } catch (Throwable t) {
+            ConfigLogImplementation.logMethods.warn("Could not probe version of config file " + fileName + ", " + t);
+        } finally {
+            if ( is != null) {
+                try {
+                    is.close();
+                } catch (IOException e) {
+                    ConfigLogImplementation.logMethods.error("Failed to close config input stream", e);
+                }
+            }
+        }
+        return result;
+    }
+
+    private String getFirstLine(String s) {
+        int lineEnd = s.length();
+        for ( int pos = 0; pos < s.length(); pos++) {
+            if ( s.charAt(pos) == '\n' || s.charAt(pos) == '\r') {
+                lineEnd = pos;
+                break;
+            }
+        }
+        return s.substring(0, lineEnd);
+    }
+
+    /**
+     * If memory mapped, config files larger than MEMORY_MAP_THRESHOLD are mapped into memory rather than read.
+     * The version header is parsed directly from the mapped file, and the config body decoded as it is deserialized.
+     * This only applies to subclasses which supply a File from getFile.
+     *
+     * Mapped files are only unmapped when garbage collected. On Windows, a mapped file cannot be renamed or deleted,
+     * so this mode is best suited to large configs which are read often and rarely saved
+     */
+    public void setMemoryMapped(boolean memoryMapped) {
+        this.memoryMapped = memoryMapped;
+    }
+
+    public boolean isMemoryMapped() {
+        return memoryMapped;
+    }
+
     /**
      * The subclass should return an ordered list of possible file names given the configName and supportedVersion
      * The config source will then attempt to load these file names in order, until one is successfully loaded
@@ -66,22 +176,104 @@ public abstract class AbstractConfigSource implements ConfigSource {
      */
     protected abstract void loadStarting(String configName) throws ConfigManagerException;
 
-    private ConfigData readConfig(String configName, String fileName, SortedSet<Long> supportedVersions) {
-        ConfigData result = null;
+    private <V> V readConfig(String configName, String fileName, SortedSet<Long> supportedVersions, ConfigReader<V> configReader) throws Exception {
+        File file = asciiCompatibleEncoding ? getFile(fileName) : null;
+        return file != null ?
+            readConfigFile(configName, file, supportedVersions, configReader) :
+            readConfigStream(configName, fileName, supportedVersions, configReader);
+    }
+
+    //read the whole file through nio, rather than through an InputStream
+    private <V> V readConfigFile(String configName, File file, SortedSet<Long> supportedVersions, ConfigReader<V> configReader) throws Exception {
+        V result = null;
+        NioFileReader fileReader = NioFileReader.getReader();
+        try {
+            ByteBuffer content = null;
+            long fileVersion = -1;
+            try {
+                content = fileReader.read(file, PROBE_SIZE, memoryMapped ? MEMORY_MAP_THRESHOLD : -1, new SupportedVersionCheck(supportedVersions, file.getName()));
+                if ( content != null ) {
+                    ConfigLogImplementation.logMethods.info("Found configuration file: " + file);
+                    fileVersion = checkVersion(readFirstLine(content), supportedVersions, file.getName());
+                }
+            } catch (FileNotFoundException e) {
+                ConfigLogImplementation.logMethods.info("Could not find or read configuration file: " + e.getMessage());
+            } catch (Throwable t) {
+                //we'll try the next filename, to see if we can load that
+                ConfigLogImplementation.logMethods.error("Error loading " + configName + " configuration version " + supportedVersions + " looking for older configs..", t);
+            }
+
+            if (fileVersion != -1) {
+                ConfigMetricsImplementation.metrics.recordBytesRead(configName, content.limit());
+                if ( ConfigCompression.isCompressed(content)) {
+                    result = readCompressedConfig(configName, fileVersion, ConfigCompression.decompress(content), configReader);
+                } else {
+                    result = configReader.readConfig(configName, fileVersion, new ByteBufferConfigReader(content, charset));
+                }
+            }
+        } finally {
+            fileReader.release();
+        }
+        return result;
+    }
+
+    //accepts a file whose header has a supported version
+    private class SupportedVersionCheck implements NioFileReader.HeaderCheck {
+        private final SortedSet<Long> supportedVersions;
+        private final String fileName;
+
+        public SupportedVersionCheck(SortedSet<Long> supportedVersions, String fileName) {
+            this.supportedVersions = supportedVersions;
+            this.fileName = fileName;
+        }
+
+        public boolean accept(ByteBuffer header) {
+            long version = parseVersion(getFirstLine(charset.decode(header).toString()));
+            return isSupportedVersion(version, supportedVersions, fileName);
+        }
+    }
+
+    private <V> V readCompressedConfig(String configName, long fileVersion, InputStream decompressed, ConfigReader<V> configReader) throws Exception {
+        try {
+            return configReader.readConfig(configName, fileVersion, new BufferedReader(new InputStreamReader(decompressed, charset)));
+        } finally {
+            //release the decompressor
+            decompressed.close();
+        }
+    }
+
+    private <V> V readConfigStream(String configName, String fileName, SortedSet<Long> supportedVersions, ConfigReader<V> configReader) throws Exception {
+        V result = null;
         InputStream configInputStream = null;
+        CountingInputStream countingInputStream = null;
+        long fileVersion = -1;
         try {
-            configInputStream = getInputStream(fileName);
-            if (configInputStream != null) {
-                BufferedReader br = new BufferedReader(new InputStreamReader(configInputStream, textFileEncoding));
-                long fileVersion = checkVersion(br, supportedVersions, fileName);
-                if (fileVersion != -1) {
-                    String config = convertStreamToString(br);
-                    result = new ConfigData(configName, fileVersion, config);
+            BufferedReader br = null;
+            try {
+                configInputStream = getInputStream(fileName);
+                if ( configInputStream != null ) {
+                    countingInputStream = new CountingInputStream(configInputStream);
+                    configInputStream = countingInputStream;
+                }
+
+                if (configInputStream != null && asciiCompatibleEncoding) {
+                    //read the header line as bytes, so we can check whether the rest of the config is compressed
+                    BufferedInputStream bis = new BufferedInputStream(configInputStream);
+                    fileVersion = checkVersion(readFirstLine(bis), supportedVersions, fileName);
+                    configInputStream = ConfigCompression.decompressIfCompressed(bis);
+                    br = new BufferedReader(new InputStreamReader(configInputStream, textFileEncoding));
+                } else if (configInputStream != null) {
+                    br = new BufferedReader(new InputStreamReader(configInputStream, textFileEncoding));
+                    fileVersion = checkVersion(br, supportedVersions, fileName);
                 }
+            } catch (Throwable t) {
+                //we'll try the next filename, to see if we can load that
+                ConfigLogImplementation.logMethods.error("Error loading " + configName + " configuration version " + supportedVersions + " looking for older configs..", t);
+            }
+
+            if (fileVersion != -1) {
+                result = configReader.readConfig(configName, fileVersion, br);
             }
-        } catch (Throwable t) {
-            //we'll try the next filename, to see if we can load that
-            ConfigLogImplementation.logMethods.error("Error loading " + configName + " configuration version " + supportedVersions + " looking for older configs..", t);
         } finally {
             if ( configInputStream != null) {
                 try {
@@ -90,10 +282,23 @@ public abstract class AbstractConfigSource implements ConfigSource {
                     ConfigLogImplementation.logMethods.error("Failed to close config input stream", e);
                 }
             }
+            if ( fileVersion != -1 ) {
+                ConfigMetricsImplementation.metrics.recordBytesRead(configName, countingInputStream.getByteCount());
+            }
         }
         return result;
     }
 
+    /**
+     * Subclasses which load configs from the local file system should return the File for configFileName, so that
+     * the config can be read more efficiently than via getInputStream
+     *
+     * @return the File for this configFileName, which may not exist, or null if this source does not load from files
+     */
+    protected File getFile(String configFileName) {
+        return null;
+    }
+
     /**
      *  @return an InputStream for this configFileName, if it exists and is readable, or null if it does not exist, or an input stream cannot be opened
      */
@@ -103,31 +308,121 @@ public abstract class AbstractConfigSource implements ConfigSource {
     //expect to find configVersion=versionId on the first line
     //we strip this off before parsing the rest of the config
     protected long checkVersion(BufferedReader br, SortedSet<Long> requiredVersion, String fileName) throws IOException {
-        String firstLine = br.readLine();
+        return checkVersion(br.readLine(), requiredVersion, fileName);
+    }
+
+    protected long checkVersion(String firstLine, SortedSet<Long> requiredVersion, String fileName) {
+        long versionNumber = parseVersion(firstLine);
+        return isSupportedVersion(versionNumber, requiredVersion, fileName) ? versionNumber : -1;
+    }
+
+    private boolean isSupportedVersion(long versionNumber, SortedSet<Long> requiredVersion, String fileName) {
+        boolean result = false;
+        if ( versionNumber == -1 ) {
+            ConfigLogImplementation.logMethods.warn("Could not find configVersion in file " + fileName + ", will skip this file");
+        } else if ( requiredVersion.contains(versionNumber)) {
+            result = true;
+        } else {
+            ConfigLogImplementation.logMethods.warn("Config file " + fileName + " is version " + versionNumber + " which is not one of the supported versions");
+        }
+        return result;
+    }
+
+    //@return the version from a header line, or -1 if there is no version
+    private long parseVersion(String firstLine) {
         long result = -1;
-        Matcher configVerisonMatcher = configVersionPattern.matcher(firstLine);
+        Matcher configVerisonMatcher = configVersionPattern.matcher(firstLine == null ? "" : firstLine);
         if ( configVerisonMatcher.find()) {
-            long versionNumber = Long.parseLong(configVerisonMatcher.group(1));
-            if (requiredVersion.contains(versionNumber)) {
-                result = versionNumber;
-            } else {
-                ConfigLogImplementation.logMethods.warn("Config file " + fileName + " is version " + versionNumber + " which is not one of the supported versions");
+            result = Long.parseLong(configVerisonMatcher.group(1));
+        }
+        return result;
+    }
+
+    //read the first line as BufferedReader.readLine would, lines may end with \n, \r or \r\n
+    //only the header bytes are decoded, leaving the buffer positioned at the start of the config body
+    private String readFirstLine(ByteBuffer content) {
+        int start = content.position();
+        int lineEnd = content.limit();
+        int bodyStart = content.limit();
+        for ( int pos = start; pos < content.limit(); pos++) {
+            byte b = content.get(pos);
+            if ( b == '\n' || b == '\r') {
+                lineEnd = pos;
+                bodyStart = b == '\r' && pos + 1 < content.limit() && content.get(pos + 1) == '\n' ? pos + 2 : pos + 1;
+                break;
             }
-        } else {
-            ConfigLogImplementation.logMethods.warn("Could not find configVersion in file " + fileName + ", will skip this file");
+        }
+
+        String result = null;
+        if ( lineEnd > start || bodyStart > start) {
+            byte[] line = new byte[lineEnd - start];
+            content.get(line);
+            result = new String(line, charset);
+        }
+        content.position(bodyStart);
+        return result;
+    }
+
+    //read the first line from a stream as BufferedReader.readLine would, leaving the stream at the start of the config body
+    private String readFirstLine(BufferedInputStream is) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream(PROBE_SIZE);
+        int b = is.read();
+        boolean empty = b == -1;
+        while ( b != -1 && b != '\n' && b != '\r') {
+            line.write(b);
+            b = is.read();
+        }
+        if ( b == '\r' ) {
+            is.mark(1);
+            if ( is.read() != '\n' ) {
+                is.reset();
+            }
+        }
+        return empty ? null : new String(line.toByteArray(), charset);
+    }
+
+    //the version header can only be found by scanning the bytes if the encoding represents ascii chars as single bytes
+    static boolean isAsciiCompatible(Charset charset) {
+        String ascii = "<!-- " + CONFIG_VERSION_PREFIX + "0123456789 -->\r\n";
+        boolean result;
+        try {
+            result = Arrays.equals(ascii.getBytes("US-ASCII"), ascii.getBytes(charset));
+        } catch (UnsupportedEncodingException e) {
+            result = false;
         }
         return result;
     }
 
+    //reads the config into a String to create ConfigData
+    private final ConfigReader<ConfigData> configDataReader = new ConfigReader<ConfigData>() {
+        public ConfigData readConfig(String configName, long version, Reader configReader) {
+            ConfigData result = null;
+            try {
+                String config;
+                if ( configReader instanceof ByteBufferConfigReader) {
+                    config = ((ByteBufferConfigReader)configReader).readRemaining();
+                } else {
+                    BufferedReader br = configReader instanceof BufferedReader ? (BufferedReader)configReader : new BufferedReader(configReader);
+                    config = convertStreamToString(br);
+                }
+                result = new ConfigData(configName, version, config);
+            } catch (Throwable t) {
+                //returning null, we'll try the next filename, to see if we can load that
+                ConfigLogImplementation.logMethods.error("Error loading " + configName + " configuration version " + version + " looking for older configs..", t);
+            }
+            return result;
+        }
+    };
+
     protected String convertStreamToString(BufferedReader br) throws IOException {
         final int BUF_SIZE = 4096;
         final char[] BUFFER = new char[BUF_SIZE];
 
-        StringBuffer returnBuffer = new StringBuffer();
+        StringBuilder returnBuffer = new StringBuilder(BUF_SIZE);
         try {
-            int bytesRead;
-            while ((bytesRead = br.read(BUFFER)) != -1) {
-                returnBuffer.append(new String(BUFFER, 0, bytesRead));
+            int charsRead;
+            while ((charsRead = br.read(BUFFER)) != -1) {
+                returnBuffer.append(BUFFER, 0, charsRead);
             }
         } finally {
             if (br != null) {
@@ -140,4 +435,39 @@ public abstract class AbstractConfigSource implements ConfigSource {
         }
         return returnBuffer.toString();
     }
+
+    //counts the bytes read from a config stream
+    private static class CountingInputStream extends FilterInputStream {
+        private long byteCount;
+
+        public CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        public int read() throws IOException {
+            int result = super.read();
+            if ( result != -1 ) {
+                byteCount++;
+            }
+            return result;
+        }
+
+        public int read(byte[] b, int off, int len) throws IOException {
+            int result = super.read(b, off, len);
+            if ( result != -1 ) {
+                byteCount += result;
+            }
+            return result;
+        }
+
+        public long skip(long n) throws IOException {
+            long result = super.skip(n);
+            byteCount += result;
+            return result;
+        }
+
+        public long getByteCount() {
+            return byteCount;
+        }
+    }
 }
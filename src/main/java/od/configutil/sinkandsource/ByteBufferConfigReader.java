@@ -0,0 +1,97 @@
+package od.configutil.sinkandsource;
+
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * A Reader which decodes a config from the remaining bytes in a ByteBuffer, which may be a heap buffer or
+ * a memory mapped file. Chars are decoded as they are read, so the whole config is not copied.
+ * If the whole config is required as a String, readRemaining() decodes it in a single step
+ */
+class ByteBufferConfigReader extends Reader {
+
+    private static final int CHAR_BUFFER_SIZE = 8192;
+
+    private ByteBuffer bytes;
+    private Charset charset;
+    private CharsetDecoder decoder;
+    private CharBuffer chars;
+    private boolean decodeComplete;
+    private boolean flushComplete;
+
+    public ByteBufferConfigReader(ByteBuffer bytes, Charset charset) {
+        this.bytes = bytes;
+        this.charset = charset;
+    }
+
+    public int read(char[] cbuf, int off, int len) {
+        if ( chars == null || ! chars.hasRemaining()) {
+            fill();
+        }
+        int result = -1;
+        if ( chars.hasRemaining()) {
+            result = Math.min(len, chars.remaining());
+            chars.get(cbuf, off, result);
+        }
+        return result;
+    }
+
+    private void fill() {
+        if ( chars == null ) {
+            //replace malformed input, as InputStreamReader does
+            decoder = charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+            chars = CharBuffer.allocate(CHAR_BUFFER_SIZE);
+        } else {
+            chars.clear();
+        }
+
+        if ( ! decodeComplete ) {
+            CoderResult r = decoder.decode(bytes, chars, true);
+            decodeComplete = r.isUnderflow();
+        }
+        if ( decodeComplete && ! flushComplete ) {
+            CoderResult r = decoder.flush(chars);
+            flushComplete = r.isUnderflow();
+        }
+        chars.flip();
+    }
+
+    /**
+     * @return the remaining config as a String
+     */
+    public String readRemaining() {
+        String result;
+        if ( chars == null ) {
+            if ( bytes.hasArray()) {
+                result = new String(bytes.array(), bytes.arrayOffset() + bytes.position(), bytes.remaining(), charset);
+            } else {
+                byte[] b = new byte[bytes.remaining()];
+                bytes.get(b);
+                result = new String(b, charset);
+            }
+            bytes.position(bytes.limit());
+            chars = CharBuffer.allocate(0);
+            decodeComplete = true;
+            flushComplete = true;
+        } else {
+            StringBuilder sb = new StringBuilder();
+            char[] buffer = new char[CHAR_BUFFER_SIZE];
+            int charsRead;
+            while ((charsRead = read(buffer, 0, buffer.length)) != -1) {
+                sb.append(buffer, 0, charsRead);
+            }
+            result = sb.toString();
+        }
+        return result;
+    }
+
+    public void close() {
+    }
+}
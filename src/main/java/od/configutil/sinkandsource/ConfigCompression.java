@@ -0,0 +1,90 @@
+package od.configutil.sinkandsource;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * A compressed config file has the usual uncompressed version header line, followed by the config body compressed
+ * with GZIP. The version can therefore be probed without decompressing the file. A compressed body is recognised by
+ * the GZIP magic number, which cannot begin a text config, so compressed and uncompressed files can share an extension
+ */
+class ConfigCompression {
+
+    private static final int BUFFER_SIZE = 8192;
+    private static final int GZIP_MAGIC_1 = 0x1f;
+    private static final int GZIP_MAGIC_2 = 0x8b;
+
+    /**
+     * @return true if the remaining bytes in the buffer start with a compressed config body
+     */
+    public static boolean isCompressed(ByteBuffer body) {
+        int pos = body.position();
+        return body.remaining() >= 2 && (body.get(pos) & 0xff) == GZIP_MAGIC_1 && (body.get(pos + 1) & 0xff) == GZIP_MAGIC_2;
+    }
+
+    /**
+     * @return a stream of the decompressed config body if the stream is at the start of a compressed body,
+     * otherwise the stream supplied
+     */
+    public static InputStream decompressIfCompressed(BufferedInputStream body) throws IOException {
+        body.mark(2);
+        int b1 = body.read();
+        int b2 = body.read();
+        body.reset();
+        return b1 == GZIP_MAGIC_1 && b2 == GZIP_MAGIC_2 ? new GZIPInputStream(body, BUFFER_SIZE) : body;
+    }
+
+    public static InputStream decompress(ByteBuffer body) throws IOException {
+        return new GZIPInputStream(new ByteBufferInputStream(body), BUFFER_SIZE);
+    }
+
+    /**
+     * @return a stream which compresses the config body. Closing it finishes the compressed data, but does not close
+     * the underlying stream
+     */
+    public static OutputStream compress(OutputStream out) throws IOException {
+        return new GZIPOutputStream(new NonClosingOutputStream(out), BUFFER_SIZE);
+    }
+
+    private static class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        public ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+        }
+
+        public int read(byte[] b, int off, int len) {
+            int result = -1;
+            if ( buffer.hasRemaining()) {
+                result = Math.min(len, buffer.remaining());
+                buffer.get(b, off, result);
+            }
+            return result;
+        }
+
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+
+    private static class NonClosingOutputStream extends FilterOutputStream {
+
+        public NonClosingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+        }
+
+        public void close() throws IOException {
+            flush();
+        }
+    }
+}
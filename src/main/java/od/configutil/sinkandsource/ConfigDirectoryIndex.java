@@ -0,0 +1,161 @@
+package od.configutil.sinkandsource;
+
+import od.configutil.util.ConfigLogImplementation;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * An index of the config files in a config directory, from configName to the versions present
+ *
+ * The index is built from a single listing of the directory and then kept up to date by a ConfigDirectoryWatcher,
+ * so that a load only tries the files which exist rather than one file name for every supported version.
+ *
+ * Files written by other processes are added to the index when the WatchService reports them, which may be after a
+ * short delay on platforms without native file change notification. Each event is checked against the file system
+ * before the index is updated, so events arriving after the index has already been updated directly are harmless.
+ * If the directory can no longer be watched, the index reports every version as present, so loads fall back to
+ * trying every file name
+ */
+class ConfigDirectoryIndex implements ConfigDirectoryWatcher.DirectoryListener {
+
+    private final File configDirectory;
+    private final String fileSuffix;
+    private volatile ConcurrentMap<String, Set<Long>> versionsByConfigName = new ConcurrentHashMap<String, Set<Long>>();
+    private volatile boolean valid = true;
+
+    public ConfigDirectoryIndex(File configDirectory, String extension) {
+        this.configDirectory = configDirectory;
+        this.fileSuffix = "." + extension;
+    }
+
+    /**
+     * Start watching the directory and build the index
+     * The watch is registered before the directory is listed, so no change can be missed between the two
+     */
+    public void start() throws IOException {
+        ConfigDirectoryWatcher.addListener(configDirectory, this);
+        try {
+            rebuild();
+        } catch (IOException e) {
+            ConfigDirectoryWatcher.removeListener(configDirectory, this);
+            throw e;
+        }
+    }
+
+    public void close() {
+        valid = false;
+        ConfigDirectoryWatcher.removeListener(configDirectory, this);
+    }
+
+    /**
+     * @return true if a config file with this configName and version is in the directory
+     */
+    public boolean contains(String configName, long version) {
+        boolean result = true;
+        if ( valid ) {
+            Set<Long> versions = versionsByConfigName.get(configName);
+            result = versions != null && versions.contains(version);
+        }
+        return result;
+    }
+
+    /**
+     * Update the index for a file which may have been created or deleted
+     */
+    public void fileChanged(String fileName) {
+        if ( valid ) {
+            updateIndex(fileName);
+        }
+    }
+
+    public void eventsLost() {
+        try {
+            rebuild();
+        } catch (Throwable t) {
+            ConfigLogImplementation.logMethods.error("Failed to update index for config directory " + configDirectory + ", config files will no longer be indexed", t);
+            close();
+        }
+    }
+
+    public void watchEnded() {
+        ConfigLogImplementation.logMethods.warn("Config files in " + configDirectory + " will no longer be indexed");
+        valid = false;
+    }
+
+    //synchronized with rebuild, so that a change during a rebuild is applied to the new index
+    private synchronized void updateIndex(String fileName) {
+        String configName = getConfigName(fileName);
+        if ( configName != null ) {
+            long version = getVersion(fileName);
+            if ( new File(configDirectory, fileName).exists()) {
+                getVersions(versionsByConfigName, configName).add(version);
+            } else {
+                Set<Long> versions = versionsByConfigName.get(configName);
+                if ( versions != null ) {
+                    versions.remove(version);
+                }
+            }
+        }
+    }
+
+    private synchronized void rebuild() throws IOException {
+        String[] fileNames = configDirectory.list();
+        if ( fileNames == null ) {
+            throw new IOException("Cannot list config directory " + configDirectory);
+        }
+
+        ConcurrentMap<String, Set<Long>> index = new ConcurrentHashMap<String, Set<Long>>();
+        for ( String fileName : fileNames) {
+            String configName = getConfigName(fileName);
+            if ( configName != null ) {
+                getVersions(index, configName).add(getVersion(fileName));
+            }
+        }
+        versionsByConfigName = index;
+        ConfigLogImplementation.logMethods.debug("Indexed " + index.size() + " configs in config directory " + configDirectory);
+    }
+
+    private Set<Long> getVersions(ConcurrentMap<String, Set<Long>> index, String configName) {
+        Set<Long> versions = index.get(configName);
+        if ( versions == null ) {
+            versions = new ConcurrentSkipListSet<Long>();
+            Set<Long> existing = index.putIfAbsent(configName, versions);
+            if ( existing != null ) {
+                versions = existing;
+            }
+        }
+        return versions;
+    }
+
+    //config file names are configName.version.extension, temp and backup files do not match this pattern
+    //@return the configName, or null if this is not a config file name
+    private String getConfigName(String fileName) {
+        String result = null;
+        if ( fileName.endsWith(fileSuffix)) {
+            String nameAndVersion = fileName.substring(0, fileName.length() - fileSuffix.length());
+            int versionStart = nameAndVersion.lastIndexOf('.');
+            if ( versionStart > 0 && isVersion(nameAndVersion.substring(versionStart + 1))) {
+                result = nameAndVersion.substring(0, versionStart);
+            }
+        }
+        return result;
+    }
+
+    private long getVersion(String fileName) {
+        String nameAndVersion = fileName.substring(0, fileName.length() - fileSuffix.length());
+        return Long.parseLong(nameAndVersion.substring(nameAndVersion.lastIndexOf('.') + 1));
+    }
+
+    private boolean isVersion(String s) {
+        boolean result = s.length() > 0 && s.length() < 19;
+        for ( int pos = 0; pos < s.length() && result; pos++) {
+            result = s.charAt(pos) >= '0' && s.charAt(pos) <= '9';
+        }
+        return result;
+    }
+}
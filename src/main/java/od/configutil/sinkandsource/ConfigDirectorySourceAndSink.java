@@ -7,6 +7,7 @@ import od.configutil.util.ConfigUtilConstants;
 import java.io.*;
 import java.net.URL;
 import java.util.*;
+import java.util.concurrent.locks.Lock;
 
 /**
  * Created by IntelliJ IDEA.
@@ -23,14 +24,29 @@ import java.util.*;
  * When an attempt is made to load a config using a configName, ConfigDirectorySourceAndSink attempts to
  * find possible config files, starting with the most recent version number, and returns ConfigData from the
  * first valid config found.
+ *
+ * ConfigDirectorySourceAndSink is thread safe. Loads and saves are coordinated by a read/write lock per configName,
+ * so a load will not see a partially rotated config, while loads and saves for different configNames never contend
+ *
+ * Where the migrations define many versions, setIndexed(true) avoids checking for a file for every version on each load
+ *
+ * Where the same config is saved many times in quick succession, setWriteBehind(true) keeps only the latest save for
+ * each configName and writes it periodically
  */
-public class ConfigDirectorySourceAndSink implements ConfigSink, ConfigSource {
+public class ConfigDirectorySourceAndSink implements StreamingConfigSink, StreamingConfigSource, ProbingConfigSource {
 
     private File configDirectory;
     private String extension;
     private String textFileEncoding;
     private DirectorySource dirSource;
     private DirectorySink dirSink;
+    private final ConfigNameLocks configNameLocks = new ConfigNameLocks();
+    private volatile ConfigDirectoryIndex directoryIndex;
+    private final WriteBehindQueue writeBehindQueue;
+    private volatile boolean writeBehind;
+    private long writeBehindInterval = DEFAULT_WRITE_BEHIND_INTERVAL_MILLIS;
+
+    public static final long DEFAULT_WRITE_BEHIND_INTERVAL_MILLIS = 1000;
 
     public ConfigDirectorySourceAndSink(File configDirectory) {
         this(configDirectory, "xml", ConfigUtilConstants.DEFAULT_TEXT_ENCODING);
@@ -42,14 +58,118 @@ public class ConfigDirectorySourceAndSink implements ConfigSink, ConfigSource {
         this.textFileEncoding = textFileEncoding;
         this.dirSource = new DirectorySource();
         this.dirSink = new DirectorySink();
+        this.writeBehindQueue = new WriteBehindQueue(dirSink, configNameLocks);
     }
 
     public ConfigData loadConfiguration(String configName, SortedSet<Long> supportedVersions) throws ConfigManagerException {
-        return dirSource.loadConfiguration(configName, supportedVersions);
+        flushPendingConfig(configName);
+        Lock lock = configNameLocks.getLock(configName).readLock();
+        lock.lock();
+        try {
+            return dirSource.loadConfiguration(configName, supportedVersions);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public <V> V loadConfiguration(String configName, SortedSet<Long> supportedVersions, ConfigReader<V> configReader) throws Exception {
+        flushPendingConfig(configName);
+        Lock lock = configNameLocks.getLock(configName).readLock();
+        lock.lock();
+        try {
+            return dirSource.loadConfiguration(configName, supportedVersions, configReader);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public Map<String, Long> probeVersions(String configName, SortedSet<Long> supportedVersions) throws ConfigManagerException {
+        flushPendingConfig(configName);
+        Lock lock = configNameLocks.getLock(configName).readLock();
+        lock.lock();
+        try {
+            return dirSource.probeVersions(configName, supportedVersions);
+        } finally {
+            lock.unlock();
+        }
     }
 
+    /**
+     * @return the URL of the config file. In write behind mode the config is only queued, so the file at the URL may
+     * not exist yet, or may still contain an earlier config, until the queued config is written
+     */
+    public URL saveConfiguration(String configName, long version, ConfigWriter configWriter) throws ConfigManagerException {
+        Lock lock = configNameLocks.getLock(configName).writeLock();
+        lock.lock();
+        try {
+            if ( writeBehind ) {
+                //the config must be serialized now, since it may change before it is written
+                StringWriter writer = new StringWriter();
+                try {
+                    configWriter.writeConfig(writer);
+                } catch (ConfigManagerException e) {
+                    throw e;
+                } catch (Exception e) {
+                    throw new ConfigManagerException("Error saving config", e);
+                }
+                return addToWriteBehindQueue(new ConfigData(configName, version, writer.toString()));
+            } else {
+                writeBehindQueue.flushLocked(configName);
+                return dirSink.saveConfiguration(configName, version, configWriter);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the URL of the config file. In write behind mode the config is only queued, so the file at the URL may
+     * not exist yet, or may still contain an earlier config, until the queued config is written
+     */
     public URL saveConfiguration(ConfigData configuration) throws ConfigManagerException {
-        return dirSink.saveConfiguration(configuration);
+        Lock lock = configNameLocks.getLock(configuration.getConfigName()).writeLock();
+        lock.lock();
+        try {
+            if ( writeBehind ) {
+                return addToWriteBehindQueue(configuration);
+            } else {
+                writeBehindQueue.flushLocked(configuration.getConfigName());
+                return dirSink.saveConfiguration(configuration);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    //the caller holds the write lock for the configName
+    private URL addToWriteBehindQueue(ConfigData configuration) throws ConfigManagerException {
+        ConfigLogImplementation.logMethods.debug("Queueing configuration " + configuration.getConfigName() + " to be written");
+        writeBehindQueue.add(configuration);
+        if ( ! writeBehind ) {
+            //write behind was turned off while we were queueing, and the flush may have missed this config
+            writeBehindQueue.flushLocked(configuration.getConfigName());
+        }
+        File configFile = new File(configDirectory, getConfigFileName(configuration.getConfigName(), configuration.getVersion()));
+        try {
+            return configFile.toURI().toURL();
+        } catch (IOException e) {
+            throw new ConfigManagerException("Unable to save config", e);
+        }
+    }
+
+    //a load must see the latest config saved, so write it first if it is still queued
+    private void flushPendingConfig(String configName) throws ConfigManagerException {
+        if ( writeBehindQueue.isPending(configName)) {
+            writeBehindQueue.flush(configName);
+        }
+    }
+
+    /**
+     * Write any configs which are waiting to be written in write behind mode, and wait until they are written
+     * @throws ConfigManagerException, if any config could not be written
+     */
+    public void flush() throws ConfigManagerException {
+        writeBehindQueue.flush();
     }
 
     public boolean canWrite() {
@@ -60,6 +180,107 @@ public class ConfigDirectorySourceAndSink implements ConfigSink, ConfigSource {
         return configDirectory;
     }
 
+    /**
+     * Map large config files into memory when loading, rather than reading them
+     * @see AbstractConfigSource#setMemoryMapped
+     */
+    public void setMemoryMapped(boolean memoryMapped) {
+        dirSource.setMemoryMapped(memoryMapped);
+    }
+
+    public boolean isMemoryMapped() {
+        return dirSource.isMemoryMapped();
+    }
+
+    /**
+     * If indexed, the config directory is listed once and then watched for changes using a WatchService, and loads
+     * only try the files in the index, rather than checking for a file for each supported version.
+     *
+     * Files saved through this sink are indexed immediately. Files added by other processes are indexed when the
+     * WatchService reports the change, which on some platforms may take a few seconds.
+     * If the directory cannot be watched, the index is not used.
+     */
+    public synchronized void setIndexed(boolean indexed) {
+        if ( indexed && directoryIndex == null ) {
+            ConfigDirectoryIndex index = new ConfigDirectoryIndex(configDirectory, extension);
+            try {
+                index.start();
+                directoryIndex = index;
+            } catch (IOException e) {
+                ConfigLogImplementation.logMethods.error("Could not watch config directory " + configDirectory + ", config files will not be indexed", e);
+            }
+        } else if ( ! indexed && directoryIndex != null ) {
+            directoryIndex.close();
+            directoryIndex = null;
+        }
+    }
+
+    public boolean isIndexed() {
+        return directoryIndex != null;
+    }
+
+    /**
+     * Do not write a config if the file already contains the same version and content
+     * @see AbstractConfigSink#setSkipUnchanged
+     */
+    public void setSkipUnchanged(boolean skipUnchanged) {
+        dirSink.setSkipUnchanged(skipUnchanged);
+    }
+
+    public boolean isSkipUnchanged() {
+        return dirSink.isSkipUnchanged();
+    }
+
+    /**
+     * Write configs compressed, configs are decompressed when loaded whether or not this is set
+     * @see AbstractConfigSink#setCompressed
+     */
+    public void setCompressed(boolean compressed) {
+        dirSink.setCompressed(compressed);
+    }
+
+    public boolean isCompressed() {
+        return dirSink.isCompressed();
+    }
+
+    /**
+     * In write behind mode a save only queues the config, replacing any config queued with the same configName, and
+     * the queued configs are written every write behind interval, when flush is called, and when the JVM shuts down.
+     * A load writes its config first if it is queued, so always sees the latest config saved.
+     *
+     * Since a save returns before the config is written, errors writing the config are only logged, unless the
+     * config is written by flush. Turning write behind mode off writes any queued configs
+     */
+    public synchronized void setWriteBehind(boolean writeBehind) throws ConfigManagerException {
+        if ( writeBehind && ! this.writeBehind ) {
+            writeBehindQueue.start(writeBehindInterval);
+            this.writeBehind = true;
+        } else if ( ! writeBehind && this.writeBehind ) {
+            this.writeBehind = false;
+            writeBehindQueue.stop();
+            writeBehindQueue.flush();
+        }
+    }
+
+    public boolean isWriteBehind() {
+        return writeBehind;
+    }
+
+    /**
+     * @param writeBehindIntervalMillis the interval between writes of queued configs in write behind mode, default 1000ms
+     */
+    public synchronized void setWriteBehindInterval(long writeBehindIntervalMillis) throws ConfigManagerException {
+        this.writeBehindInterval = writeBehindIntervalMillis;
+        if ( writeBehind ) {
+            writeBehindQueue.stop();
+            writeBehindQueue.start(writeBehindIntervalMillis);
+        }
+    }
+
+    public synchronized long getWriteBehindInterval() {
+        return writeBehindInterval;
+    }
+
     /**
      * Implementation of FileSource
      */
@@ -71,9 +292,12 @@ public class ConfigDirectorySourceAndSink implements ConfigSink, ConfigSource {
 
         @Override
         protected List<String> getFileNames(String configName, List<Long> supportedVersions) {
+            ConfigDirectoryIndex index = directoryIndex;
             List<String> fileNames = new LinkedList<String>();
             for ( Long version : supportedVersions) {
-                fileNames.add(ConfigDirectorySourceAndSink.this.getConfigFileName(configName, version));
+                if ( index == null || index.contains(configName, version)) {
+                    fileNames.add(ConfigDirectorySourceAndSink.this.getConfigFileName(configName, version));
+                }
             }
             return fileNames;
         }
@@ -89,6 +313,10 @@ public class ConfigDirectorySourceAndSink implements ConfigSink, ConfigSource {
             }
         }
 
+        protected File getFile(String configFileName) {
+            return new File(configDirectory, configFileName);
+        }
+
         protected InputStream getInputStream(String configFileName) throws FileNotFoundException {
             InputStream configInputStream = null;
             File f = new File(configDirectory, configFileName);
@@ -116,7 +344,16 @@ public class ConfigDirectorySourceAndSink implements ConfigSink, ConfigSource {
             return ConfigDirectorySourceAndSink.this.getConfigFileName(configName, version);
         }
 
+        @Override
+        protected File getConfigFile(String fileName) {
+            return new File(configDirectory, fileName);
+        }
+
         protected URL writeConfig(ConfigData configuration, String fileName) throws Exception {
+            return writeConfig(configuration.getConfigName(), configuration.getVersion(), new StringConfigWriter(configuration.getSerializedConfig()), fileName);
+        }
+
+        protected URL writeConfig(String configName, long version, ConfigWriter configWriter, String fileName) throws Exception {
             File configFile = new File(configDirectory, fileName);
             File backupFile = new File(configDirectory, fileName + ".bak");
             ConfigLogImplementation.logMethods.info("Writing configuration file at " + configFile);
@@ -133,9 +370,11 @@ public class ConfigDirectorySourceAndSink implements ConfigSink, ConfigSource {
 
                 ConfigLogImplementation.logMethods.debug("About to write: " + tempConfigFile);
 
+                boolean written = false;
                 try {
                     fos = new FileOutputStream(tempConfigFile);
-                    writeConfigToStream(fos, configuration.getSerializedConfig(), configuration.getVersion());
+                    writeConfigToStream(fos, configWriter, version);
+                    written = true;
                 } finally {
                     if ( fos != null) {
                         try {
@@ -144,6 +383,10 @@ public class ConfigDirectorySourceAndSink implements ConfigSink, ConfigSource {
                             ConfigLogImplementation.logMethods.error("Failed to close out file stream to temp file " + tempConfigFile.getPath(), e);
                         }
                     }
+                    if ( ! written ) {
+                        //the config may have failed to serialize part way through, don't leave a partial temp file
+                        tempConfigFile.delete();
+                    }
                 }
                 ConfigLogImplementation.logMethods.debug("Written: " + tempConfigFile);
 
@@ -168,6 +411,12 @@ public class ConfigDirectorySourceAndSink implements ConfigSink, ConfigSource {
                 if (!tempConfigFile.renameTo(configFile)) {
                     throw new IOException("Unable to rename temp config: " + tempConfigFile + " to new config: " + configFile);
                 }
+
+                //don't wait for the WatchService, so a load straight after the save finds the new file
+                ConfigDirectoryIndex index = directoryIndex;
+                if ( index != null ) {
+                    index.fileChanged(fileName);
+                }
             } catch (IOException e) {
                 ConfigLogImplementation.logMethods.error("Unable to save config: " + configFile, e);
                 throw new ConfigManagerException("Unable to save config", e);
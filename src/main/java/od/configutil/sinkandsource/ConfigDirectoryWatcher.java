@@ -0,0 +1,154 @@
+package od.configutil.sinkandsource;
+
+import od.configutil.util.ConfigLogImplementation;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Watches a config directory with a WatchService and passes file changes to listeners
+ *
+ * There is one WatchService and watch thread for each directory, however many listeners are added, so a
+ * ConfigDirectoryIndex and ConfigManager's config listeners for the same directory share a single watch.
+ * The watch stops when the last listener is removed.
+ *
+ * Listeners are called on the watch thread, so should return quickly
+ */
+public class ConfigDirectoryWatcher {
+
+    public interface DirectoryListener {
+
+        /**
+         * A file in the directory was created, modified or deleted
+         */
+        void fileChanged(String fileName);
+
+        /**
+         * Some events were lost, so any file in the directory may have changed
+         */
+        void eventsLost();
+
+        /**
+         * The directory can no longer be watched, no further events will be received
+         */
+        void watchEnded();
+    }
+
+    //guarded by the class
+    private static final Map<File, ConfigDirectoryWatcher> watchers = new HashMap<File, ConfigDirectoryWatcher>();
+
+    private final File directory;
+    private final WatchService watchService;
+    private final List<DirectoryListener> listeners = new CopyOnWriteArrayList<DirectoryListener>();
+
+    private ConfigDirectoryWatcher(File directory) throws IOException {
+        this.directory = directory;
+        this.watchService = FileSystems.getDefault().newWatchService();
+        try {
+            directory.toPath().register(
+                watchService,
+                StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_MODIFY,
+                StandardWatchEventKinds.ENTRY_DELETE
+            );
+        } catch (IOException e) {
+            watchService.close();
+            throw e;
+        }
+
+        Thread watchThread = new Thread(new Runnable() {
+            public void run() {
+                processEvents();
+            }
+        }, "ConfigDirectoryWatcher-" + directory.getName());
+        watchThread.setDaemon(true);
+        watchThread.start();
+    }
+
+    /**
+     * Start passing changes to files in the directory to the listener. Changes made after this returns are
+     * always passed to the listener
+     * @throws IOException, if the directory cannot be watched
+     */
+    public static void addListener(File directory, DirectoryListener listener) throws IOException {
+        File key = getKey(directory);
+        synchronized (ConfigDirectoryWatcher.class) {
+            ConfigDirectoryWatcher watcher = watchers.get(key);
+            if ( watcher == null ) {
+                watcher = new ConfigDirectoryWatcher(key);
+                watchers.put(key, watcher);
+            }
+            watcher.listeners.add(listener);
+        }
+    }
+
+    public static void removeListener(File directory, DirectoryListener listener) {
+        File key = getKey(directory);
+        synchronized (ConfigDirectoryWatcher.class) {
+            ConfigDirectoryWatcher watcher = watchers.get(key);
+            if ( watcher != null && watcher.listeners.remove(listener) && watcher.listeners.isEmpty()) {
+                watchers.remove(key);
+                watcher.close();
+            }
+        }
+    }
+
+    private static File getKey(File directory) {
+        return directory.toPath().toAbsolutePath().normalize().toFile();
+    }
+
+    private void processEvents() {
+        try {
+            boolean valid = true;
+            while (valid) {
+                WatchKey key = watchService.take();
+                for ( WatchEvent<?> event : key.pollEvents()) {
+                    for ( DirectoryListener listener : listeners) {
+                        try {
+                            if ( event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                                listener.eventsLost();
+                            } else {
+                                listener.fileChanged(event.context().toString());
+                            }
+                        } catch (Throwable t) {
+                            ConfigLogImplementation.logMethods.error("Failed to process change in config directory " + directory, t);
+                        }
+                    }
+                }
+                valid = key.reset();
+            }
+            ConfigLogImplementation.logMethods.warn("Config directory " + directory + " can no longer be watched");
+            watchEnded();
+        } catch (InterruptedException e) {
+            watchEnded();
+        } catch (ClosedWatchServiceException e) {
+            //the last listener was removed
+        }
+    }
+
+    //a later addListener for the directory starts a new watch
+    private void watchEnded() {
+        synchronized (ConfigDirectoryWatcher.class) {
+            if ( watchers.get(directory) == this ) {
+                watchers.remove(directory);
+            }
+        }
+        close();
+        for ( DirectoryListener listener : listeners) {
+            listener.watchEnded();
+        }
+    }
+
+    private void close() {
+        try {
+            watchService.close();
+        } catch (IOException e) {
+            ConfigLogImplementation.logMethods.error("Failed to close WatchService for config directory " + directory, e);
+        }
+    }
+}
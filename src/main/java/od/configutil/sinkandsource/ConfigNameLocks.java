@@ -0,0 +1,32 @@
+package od.configutil.sinkandsource;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * A ReadWriteLock per configName
+ *
+ * Loads of a config take the read lock and saves take the write lock, so that a load never sees a save
+ * half way through rotating the config and backup files, and two saves to the same config cannot interleave.
+ * Loads and saves of configs with different names never contend.
+ *
+ * One lock is kept for each configName used, we expect the number of configNames to be small
+ */
+class ConfigNameLocks {
+
+    private final ConcurrentMap<String, ReadWriteLock> locks = new ConcurrentHashMap<String, ReadWriteLock>();
+
+    public ReadWriteLock getLock(String configName) {
+        ReadWriteLock lock = locks.get(configName);
+        if ( lock == null ) {
+            lock = new ReentrantReadWriteLock();
+            ReadWriteLock existing = locks.putIfAbsent(configName, lock);
+            if ( existing != null ) {
+                lock = existing;
+            }
+        }
+        return lock;
+    }
+}
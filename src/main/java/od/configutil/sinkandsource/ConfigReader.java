@@ -0,0 +1,15 @@
+package od.configutil.sinkandsource;
+
+import java.io.Reader;
+
+/**
+ * Callback used by a StreamingConfigSource to read a config, once the source has found a config with a supported version
+ */
+public interface ConfigReader<V> {
+
+    /**
+     * @param configReader, a Reader positioned at the start of the serialized config, after the version header
+     * @return the result of reading the config, or null to indicate the source should try to find an older config
+     */
+    V readConfig(String configName, long version, Reader configReader) throws Exception;
+}
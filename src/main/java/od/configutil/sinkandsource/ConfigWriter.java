@@ -0,0 +1,11 @@
+package od.configutil.sinkandsource;
+
+import java.io.Writer;
+
+/**
+ * Callback used by a StreamingConfigSink to write the serialized config, after the sink has written the version header
+ */
+public interface ConfigWriter {
+
+    void writeConfig(Writer writer) throws Exception;
+}
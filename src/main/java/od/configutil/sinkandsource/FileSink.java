@@ -34,7 +34,14 @@ public class FileSink extends AbstractConfigSink {
         return file.getName();
     }
 
-    protected URL writeConfig(ConfigData configuration, String fileName) throws Exception {
+    protected File getConfigFile(String fileName) {
+        return file;
+    }
+
+    //synchronized, since concurrent saves would otherwise interleave writes to the same file
+    //FileSink writes directly to the target file, so we do not override the streaming writeConfig - the config
+    //is fully serialized before the file is opened, and a serialization failure cannot leave a truncated file
+    protected synchronized URL writeConfig(ConfigData configuration, String fileName) throws Exception {
         FileOutputStream fos = null;
         try {
             fos = new FileOutputStream(file);
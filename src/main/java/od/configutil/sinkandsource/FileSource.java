@@ -47,6 +47,14 @@ public class FileSource extends AbstractConfigSource {
         return Collections.singletonList(file.getName());
     }
 
+    protected File getFile(String configFileName) {
+        return file;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
     protected InputStream getInputStream(String configFileName) throws Exception {
         return new FileInputStream(file);
     }
@@ -0,0 +1,138 @@
+package od.configutil.sinkandsource;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Reads the whole of a config file through a FileChannel into a byte array sized from the file length,
+ * or alternatively maps the file into memory. The file's header is checked before the rest of the file is read
+ *
+ * The byte array is reused by each thread, so loading many configs does not allocate a new buffer for each file.
+ * Buffers larger than MAX_POOLED_BUFFER_SIZE are not retained, so that a thread which once loaded a very large
+ * config does not hold on to its buffer indefinitely.
+ *
+ * The buffer returned by read() belongs to the calling thread, and is only valid until release() is called
+ */
+final class NioFileReader {
+
+    static final int MAX_POOLED_BUFFER_SIZE = 1024 * 1024;
+
+    //reading into a heap buffer copies via a temporary direct buffer of the same size, so read in chunks
+    //to keep the temporary buffer small
+    private static final int READ_CHUNK_SIZE = 64 * 1024;
+
+    private static final ThreadLocal<NioFileReader> threadReaders = new ThreadLocal<NioFileReader>() {
+        protected NioFileReader initialValue() {
+            return new NioFileReader();
+        }
+    };
+
+    /**
+     * Checks the version header at the start of a config file, before the rest of the file is read
+     */
+    interface HeaderCheck {
+
+        /**
+         * @param header the first bytes of the file
+         * @return true if the rest of the file should be read
+         */
+        boolean accept(ByteBuffer header);
+    }
+
+    private byte[] bytes;
+    private boolean inUse;
+
+    private NioFileReader() {
+    }
+
+    /**
+     * @return a reader for the current thread, or a new unpooled reader if the thread's reader is still in use
+     */
+    public static NioFileReader getReader() {
+        NioFileReader reader = threadReaders.get();
+        if ( reader.inUse ) {
+            reader = new NioFileReader();
+        }
+        reader.inUse = true;
+        return reader;
+    }
+
+    /**
+     * Read the file into this thread's buffer, or map it into memory if it is at least mapThreshold bytes.
+     * The rest of the file is only read once headerCheck has accepted its first headerSize bytes, so a file which is
+     * rejected costs a single small read, and the header of a file which is accepted is not read twice
+     *
+     * @param mapThreshold the size at which the file is mapped rather than read, or -1 to always read the file
+     * @return a buffer containing the file content, or null if headerCheck rejected the file
+     * @throws IOException, a FileNotFoundException if the file does not exist or cannot be read
+     */
+    public ByteBuffer read(File file, int headerSize, long mapThreshold, HeaderCheck headerCheck) throws IOException {
+        FileInputStream fis = new FileInputStream(file);
+        try {
+            FileChannel channel = fis.getChannel();
+            int size = getSize(file, channel);
+            ByteBuffer result;
+            if ( mapThreshold >= 0 && size >= mapThreshold ) {
+                //the mapping remains valid after the file is closed, until it is garbage collected
+                result = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+                ByteBuffer header = result.duplicate();
+                header.limit(Math.min(headerSize, size));
+                if ( ! headerCheck.accept(header)) {
+                    result = null;
+                }
+            } else {
+                byte[] b = getByteArray(size);
+                int length = read(channel, b, 0, Math.min(headerSize, size));
+                if ( headerCheck.accept(ByteBuffer.wrap(b, 0, length))) {
+                    length = read(channel, b, length, size);
+                    result = ByteBuffer.wrap(b, 0, length);
+                } else {
+                    result = null;
+                }
+            }
+            return result;
+        } finally {
+            fis.close();
+        }
+    }
+
+    //@return the length read, which is less than end if the file was truncated while being read
+    private int read(FileChannel channel, byte[] b, int length, int end) throws IOException {
+        int bytesRead = 0;
+        while (length < end && bytesRead != -1) {
+            bytesRead = channel.read(ByteBuffer.wrap(b, length, Math.min(READ_CHUNK_SIZE, end - length)));
+            if ( bytesRead > 0 ) {
+                length += bytesRead;
+            }
+        }
+        return length;
+    }
+
+    private int getSize(File file, FileChannel channel) throws IOException {
+        long size = channel.size();
+        if ( size > Integer.MAX_VALUE ) {
+            throw new IOException("Config file " + file + " is too large to read");
+        }
+        return (int)size;
+    }
+
+    /**
+     * Release the buffer returned by read, so that it may be reused by this thread
+     */
+    public void release() {
+        inUse = false;
+        if ( bytes != null && bytes.length > MAX_POOLED_BUFFER_SIZE) {
+            bytes = null;
+        }
+    }
+
+    private byte[] getByteArray(int size) {
+        if ( bytes == null || bytes.length < size) {
+            bytes = new byte[size];
+        }
+        return bytes;
+    }
+}
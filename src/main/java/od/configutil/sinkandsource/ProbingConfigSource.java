@@ -0,0 +1,21 @@
+package od.configutil.sinkandsource;
+
+import od.configutil.util.ConfigManagerException;
+
+import java.util.Map;
+import java.util.SortedSet;
+
+/**
+ * A ConfigSource which can cheaply read the version header of its candidate config files,
+ * without reading or decoding the config itself
+ */
+public interface ProbingConfigSource extends ConfigSource {
+
+    /**
+     * Read the version header of each candidate file for configName
+     *
+     * @return a map of candidate file name to the version in its header, in the order the source would try to load them.
+     * The version is -1 if the file could not be read, or did not contain a version header
+     */
+    Map<String, Long> probeVersions(String configName, SortedSet<Long> supportedVersions) throws ConfigManagerException;
+}
@@ -0,0 +1,14 @@
+package od.configutil.sinkandsource;
+
+import od.configutil.util.ConfigManagerException;
+
+import java.net.URL;
+
+/**
+ * A ConfigSink which can have a config written directly to its output by a ConfigWriter,
+ * rather than receiving the whole serialized config as a String
+ */
+public interface StreamingConfigSink extends ConfigSink {
+
+    URL saveConfiguration(String configName, long version, ConfigWriter configWriter) throws ConfigManagerException;
+}
@@ -0,0 +1,17 @@
+package od.configutil.sinkandsource;
+
+import java.util.SortedSet;
+
+/**
+ * A ConfigSource which can pass the config to a ConfigReader as a stream, rather than loading it into a String
+ */
+public interface StreamingConfigSource extends ConfigSource {
+
+    /**
+     * Find the config with the highest supported version available, and pass it to configReader
+     *
+     * @return the value returned by configReader, or null if no config could be found
+     * @throws Exception, if an error occurs which prevents config load. Exceptions thrown by configReader are propagated
+     */
+    <V> V loadConfiguration(String configName, SortedSet<Long> supportedVersions, ConfigReader<V> configReader) throws Exception;
+}
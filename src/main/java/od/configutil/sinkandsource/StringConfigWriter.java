@@ -0,0 +1,22 @@
+package od.configutil.sinkandsource;
+
+import java.io.Writer;
+
+/**
+ * A ConfigWriter for a config which has already been serialized to a String
+ */
+class StringConfigWriter implements ConfigWriter {
+
+    private String serializedConfig;
+
+    public StringConfigWriter(String serializedConfig) {
+        if (serializedConfig == null) {
+            throw new IllegalArgumentException("Text is null");
+        }
+        this.serializedConfig = serializedConfig;
+    }
+
+    public void writeConfig(Writer writer) throws Exception {
+        writer.write(serializedConfig);
+    }
+}
@@ -23,7 +23,7 @@ import java.util.concurrent.*;
 public class URLConfigSource extends AbstractConfigSource {
 
     private URL context;
-    private int timeout = -1;
+    private volatile int timeout = -1;
     private Executor timeoutExecutor;
 
     public URLConfigSource(String encoding) {
@@ -100,7 +100,7 @@ public class URLConfigSource extends AbstractConfigSource {
         return isr.stream;
     }
 
-    private Executor getTimeoutExecutor() {
+    private synchronized Executor getTimeoutExecutor() {
         if ( timeoutExecutor == null ) {
             timeoutExecutor = Executors.newSingleThreadExecutor(
                 new ThreadFactory() {
@@ -0,0 +1,138 @@
+package od.configutil.sinkandsource;
+
+import od.configutil.util.ConfigLogImplementation;
+import od.configutil.util.ConfigManagerException;
+
+import java.util.ArrayList;
+import java.util.concurrent.*;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * Holds the latest unsaved ConfigData for each configName, and writes it to a sink periodically, when flushed,
+ * or when the JVM shuts down. A burst of saves to the same configName results in a single write
+ *
+ * Pending configs are written under the write lock for the configName, and removed from the queue only once they are
+ * written, so a load which takes the read lock after flushing its configName always sees the latest config, and a
+ * flush of all configs waits for the write of any config already being flushed
+ */
+class WriteBehindQueue {
+
+    private final ConfigSink sink;
+    private final ConfigNameLocks configNameLocks;
+    private final ConcurrentMap<String, ConfigData> pendingConfigs = new ConcurrentHashMap<String, ConfigData>();
+    private ScheduledExecutorService executor;
+    private Thread shutdownHook;
+
+    public WriteBehindQueue(ConfigSink sink, ConfigNameLocks configNameLocks) {
+        this.sink = sink;
+        this.configNameLocks = configNameLocks;
+    }
+
+    /**
+     * Start writing pending configs every flushIntervalMillis, and when the JVM shuts down
+     */
+    public synchronized void start(long flushIntervalMillis) {
+        executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "WriteBehindQueue");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        executor.scheduleWithFixedDelay(new Runnable() {
+            public void run() {
+                flushAndLogFailure();
+            }
+        }, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+
+        shutdownHook = new Thread("WriteBehindQueue-shutdown") {
+            public void run() {
+                flushAndLogFailure();
+            }
+        };
+        Runtime.getRuntime().addShutdownHook(shutdownHook);
+    }
+
+    /**
+     * Stop writing pending configs periodically, any pending configs remain queued until flushed
+     */
+    public synchronized void stop() {
+        if ( executor != null ) {
+            executor.shutdown();
+            try {
+                Runtime.getRuntime().removeShutdownHook(shutdownHook);
+            } catch (IllegalStateException e) {
+                //the JVM is already shutting down
+            }
+            executor = null;
+            shutdownHook = null;
+        }
+    }
+
+    /**
+     * Replace any pending config with the same configName, the caller should hold the write lock for the configName
+     */
+    public void add(ConfigData configData) {
+        pendingConfigs.put(configData.getConfigName(), configData);
+    }
+
+    public boolean isPending(String configName) {
+        return pendingConfigs.containsKey(configName);
+    }
+
+    /**
+     * Write the pending config for configName if there is one, taking only the write lock for the configName, so
+     * that the flush does not wait for the writes of other configs
+     */
+    public void flush(String configName) throws ConfigManagerException {
+        Lock lock = configNameLocks.getLock(configName).writeLock();
+        lock.lock();
+        try {
+            flushLocked(configName);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Write the pending config for configName if there is one, the caller should already hold the write lock for the
+     * configName
+     */
+    public void flushLocked(String configName) throws ConfigManagerException {
+        ConfigData configData = pendingConfigs.get(configName);
+        if ( configData != null ) {
+            sink.saveConfiguration(configData);
+            //if the write fails the config stays queued, to try again at the next flush
+            pendingConfigs.remove(configName, configData);
+        }
+    }
+
+    /**
+     * Write all pending configs, waiting for any being written by another flush
+     * @throws ConfigManagerException, the first failure if any config could not be written
+     */
+    public void flush() throws ConfigManagerException {
+        ConfigManagerException failure = null;
+        for ( String configName : new ArrayList<String>(pendingConfigs.keySet())) {
+            try {
+                flush(configName);
+            } catch (ConfigManagerException e) {
+                if ( failure == null ) {
+                    failure = e;
+                }
+            }
+        }
+
+        if ( failure != null ) {
+            throw failure;
+        }
+    }
+
+    private void flushAndLogFailure() {
+        try {
+            flush();
+        } catch (Throwable t) {
+            ConfigLogImplementation.logMethods.error("Failed to write pending configs", t);
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package od.configutil.util;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+/**
+ * A SHA-1 digest of serialized config content
+ * This is used to tell whether a config has changed without holding on to a copy of the config
+ */
+public final class ContentDigest {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private final byte[] digest;
+    private final int hashCode;
+
+    private ContentDigest(byte[] digest) {
+        this.digest = digest;
+        this.hashCode = Arrays.hashCode(digest);
+    }
+
+    /**
+     * Digest the chars of content directly, rather than encoding the whole String into a byte array first
+     */
+    public static ContentDigest of(String content) {
+        MessageDigest messageDigest = createMessageDigest();
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int length = 0;
+        for ( int pos = 0; pos < content.length(); pos++) {
+            char c = content.charAt(pos);
+            buffer[length++] = (byte)(c >>> 8);
+            buffer[length++] = (byte)c;
+            if ( length == BUFFER_SIZE ) {
+                messageDigest.update(buffer, 0, length);
+                length = 0;
+            }
+        }
+        messageDigest.update(buffer, 0, length);
+        return new ContentDigest(messageDigest.digest());
+    }
+
+    private static MessageDigest createMessageDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            //every Java platform is required to support SHA-1
+            throw new IllegalStateException("SHA-1 is not supported", e);
+        }
+    }
+
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof ContentDigest)) return false;
+        return Arrays.equals(digest, ((ContentDigest) o).digest);
+    }
+
+    public int hashCode() {
+        return hashCode;
+    }
+
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for ( byte b : digest) {
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16));
+            sb.append(Character.forDigit(b & 0xF, 16));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,91 @@
+package od.configutil;
+
+import junit.framework.TestCase;
+import od.configutil.migration.*;
+
+import java.io.File;
+import java.net.URL;
+import java.util.Collections;
+import java.util.List;
+import java.util.SortedMap;
+
+/**
+ * Tests for CachingMigrationSource
+ */
+public class TestCachingMigrationSource extends TestCase {
+
+    public void testMigrationsAreLoadedOnceAndShared() throws Exception {
+        CountingMigrationSource delegate = new CountingMigrationSource(new ClasspathMigrationLoader());
+        CachingMigrationSource s = new CachingMigrationSource(delegate);
+
+        SortedMap<Long, List<ConfigMigrationStategy>> m1 = s.loadConfigMigrations();
+        SortedMap<Long, List<ConfigMigrationStategy>> m2 = s.loadConfigMigrations();
+        assertSame(m1, m2);
+        assertSame(m1.get(201103201834L).get(0), m2.get(201103201834L).get(0));
+        assertEquals(1, delegate.loadCount);
+
+        try {
+            m1.remove(201011181800L);
+            fail("Cached migrations should not be modifiable");
+        } catch (UnsupportedOperationException e) {
+        }
+
+        s.refresh();
+        assertNotSame(m1, s.loadConfigMigrations());
+        assertEquals(2, delegate.loadCount);
+    }
+
+    public void testMigrationsReloadedWhenUrlModified() throws Exception {
+        File f = File.createTempFile("configMigrations", ".xml");
+        f.deleteOnExit();
+        final URL url = f.toURI().toURL();
+        UrlMigrationLoader.writeMigrationsFile(createMigrations(201011181800L), f);
+
+        CachingMigrationSource s = new CachingMigrationSource(new UrlMigrationLoader() {
+            protected List<URL> getURL() {
+                return Collections.singletonList(url);
+            }
+        });
+        s.setLastModifiedCheckInterval(0);
+
+        SortedMap<Long, List<ConfigMigrationStategy>> m1 = s.loadConfigMigrations();
+        assertEquals(201011181800L, (long)m1.lastKey());
+        assertSame(m1, s.loadConfigMigrations());
+
+        UrlMigrationLoader.writeMigrationsFile(createMigrations(201103201834L), f);
+        f.setLastModified(f.lastModified() + 10000);
+        assertEquals(201103201834L, (long)s.loadConfigMigrations().lastKey());
+    }
+
+    public void testConfigManagerDoesNotModifyCachedMigrations() throws Exception {
+        File tmpDir = new File(System.getProperty("java.io.tmpdir"));
+        ConfigManager cm = new ConfigManager(tmpDir);
+        CachingMigrationSource s = new CachingMigrationSource(new ClasspathMigrationLoader());
+        cm.setMigrationSource(s);
+
+        cm.saveConfig("testCachingMigrationSource", new ConfigUtilTestConfig());
+        cm.loadConfig("testCachingMigrationSource", ConfigUtilTestConfig.class);
+        cm.loadConfig("testCachingMigrationSource", ConfigUtilTestConfig.class);
+        assertEquals(2, s.loadConfigMigrations().size());
+    }
+
+    private ConfigManagerMigrations createMigrations(long version) {
+        ConfigManagerMigrations m = new ConfigManagerMigrations();
+        m.addMigration(new Migration(version, NullMigrationStrategy.class.getName(), new String[] {}));
+        return m;
+    }
+
+    private static class CountingMigrationSource implements MigrationSource {
+        private MigrationSource delegate;
+        private int loadCount;
+
+        private CountingMigrationSource(MigrationSource delegate) {
+            this.delegate = delegate;
+        }
+
+        public SortedMap<Long, List<ConfigMigrationStategy>> loadConfigMigrations() throws Exception {
+            loadCount++;
+            return delegate.loadConfigMigrations();
+        }
+    }
+}
@@ -0,0 +1,279 @@
+package od.configutil;
+
+import junit.framework.TestCase;
+import od.configutil.migration.CachingMigrationSource;
+import od.configutil.migration.ClasspathMigrationLoader;
+import od.configutil.migration.ConfigMigrationStategy;
+import od.configutil.migration.MigrationSource;
+import od.configutil.sinkandsource.ConfigDirectorySourceAndSink;
+import od.configutil.util.ConfigLogImplementation;
+import od.configutil.util.LogMethods;
+
+import java.io.File;
+import java.net.URL;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Stress tests for concurrent use of ConfigManager with the default ConfigDirectorySourceAndSink
+ */
+public class TestConcurrentConfigManager extends TestCase {
+
+    private static final int THREADS = 8;
+    private static final int ITERATIONS = 50;
+
+    private File configDirectory;
+    private ConfigManager configManager;
+    private ExecutorService executor;
+
+    protected void setUp() throws Exception {
+        configDirectory = createTempDirectory();
+        configManager = new ConfigManager(configDirectory);
+        configManager.setMigrationSource(new CachingMigrationSource(new ClasspathMigrationLoader()));
+        executor = Executors.newCachedThreadPool();
+    }
+
+    protected void tearDown() throws Exception {
+        executor.shutdownNow();
+        File[] files = configDirectory.listFiles();
+        if ( files != null ) {
+            for ( File f : files) {
+                f.delete();
+            }
+        }
+        configDirectory.delete();
+    }
+
+    public void testConcurrentSavesAndLoads() throws Exception {
+        final CyclicBarrier startBarrier = new CyclicBarrier(THREADS);
+        List<Future<?>> futures = new ArrayList<Future<?>>();
+        for ( int t = 0; t < THREADS; t++) {
+            final String configName = "concurrent" + (t % 4);
+            final String threadValue = "thread" + t;
+            futures.add(executor.submit(new Callable<Object>() {
+                public Object call() throws Exception {
+                    startBarrier.await();
+                    for ( int i = 0; i < ITERATIONS; i++) {
+                        ConfigUtilTestConfig config = new ConfigUtilTestConfig();
+                        config.setStringField(threadValue + "-" + i);
+                        configManager.saveConfig(configName, config);
+
+                        ConfigUtilTestConfig loaded = configManager.loadConfig(configName, ConfigUtilTestConfig.class);
+                        assertTrue("Loaded a complete config", loaded.getStringField().startsWith("thread"));
+                    }
+                    return null;
+                }
+            }));
+        }
+
+        for ( Future<?> f : futures) {
+            f.get(60, TimeUnit.SECONDS);
+        }
+    }
+
+    public void testSavesToDifferentNamesDoNotContend() throws Exception {
+        final CountDownLatch saveStarted = new CountDownLatch(1);
+        final CountDownLatch releaseSave = new CountDownLatch(1);
+
+        //block the save of 'blocked' while it holds the lock for its configName
+        LogMethods originalLogMethods = ConfigLogImplementation.logMethods;
+        ConfigLogImplementation.setLogMethods(new BlockingLogMethods(originalLogMethods, "blocked.", saveStarted, releaseSave));
+        try {
+            Future<?> blockedSave = executor.submit(new SaveTask("blocked"));
+            assertTrue(saveStarted.await(10, TimeUnit.SECONDS));
+
+            //a save to another config name completes while the first is blocked
+            executor.submit(new SaveTask("free")).get(10, TimeUnit.SECONDS);
+
+            //while a second save to the same config name must wait
+            Future<?> secondBlockedSave = executor.submit(new SaveTask("blocked"));
+            try {
+                secondBlockedSave.get(200, TimeUnit.MILLISECONDS);
+                fail("Save to same configName should wait for the first save");
+            } catch (TimeoutException e) {
+            }
+
+            releaseSave.countDown();
+            blockedSave.get(10, TimeUnit.SECONDS);
+            secondBlockedSave.get(10, TimeUnit.SECONDS);
+        } finally {
+            releaseSave.countDown();
+            ConfigLogImplementation.setLogMethods(originalLogMethods);
+        }
+    }
+
+    public void testBulkLoadReturnsConfigsAndFailures() throws Exception {
+        List<String> configNames = new ArrayList<String>();
+        for ( int i = 0; i < 10; i++) {
+            ConfigUtilTestConfig config = new ConfigUtilTestConfig();
+            config.setStringField("bulk" + i);
+            configManager.saveConfig("bulk" + i, config);
+            configNames.add("bulk" + i);
+        }
+        configNames.add("missing");
+
+        //with the default executor, and with an executor supplied
+        ConfigLoadResults defaultExecutorResults = configManager.loadConfigs(configNames, ConfigUtilTestConfig.class);
+        configManager.setBulkLoadExecutor(executor);
+        ConfigLoadResults results = configManager.loadConfigs(configNames, ConfigUtilTestConfig.class);
+        assertFalse(executor.isShutdown());
+
+        for ( ConfigLoadResults r : Arrays.asList(defaultExecutorResults, results)) {
+            assertFalse(r.isSuccessful());
+            assertEquals(10, r.getConfigs().size());
+            assertEquals("bulk3", r.getConfig("bulk3", ConfigUtilTestConfig.class).getStringField());
+            assertTrue(r.getFailure("missing") instanceof NoConfigFoundException);
+            assertNull(r.getConfig("missing", ConfigUtilTestConfig.class));
+        }
+    }
+
+    public void testAsyncSavesAreOrderedPerConfigName() throws Exception {
+        configManager.setAsyncExecutor(executor);
+        List<CompletableFuture<URL>> saves = new ArrayList<CompletableFuture<URL>>();
+        for ( int i = 0; i < ITERATIONS; i++) {
+            ConfigUtilTestConfig config = new ConfigUtilTestConfig();
+            config.setStringField("async" + i);
+            saves.add(configManager.saveConfigAsync("async", config));
+        }
+
+        //the load waits for the saves requested before it
+        ConfigUtilTestConfig loaded = configManager.loadConfigAsync("async", ConfigUtilTestConfig.class).get(60, TimeUnit.SECONDS);
+        assertEquals("async" + (ITERATIONS - 1), loaded.getStringField());
+        for ( CompletableFuture<URL> save : saves) {
+            assertTrue(save.isDone());
+            assertNotNull(save.get());
+        }
+
+        try {
+            configManager.loadConfigAsync("missing", ConfigUtilTestConfig.class).get(60, TimeUnit.SECONDS);
+            fail("Load of a missing config should fail");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof NoConfigFoundException);
+        }
+    }
+
+    public void testAsyncSaveWritesConfigAsItWasWhenSaveWasRequested() throws Exception {
+        //hold the write until the config has been changed
+        final CountDownLatch configChanged = new CountDownLatch(1);
+        configManager.setAsyncExecutor(new Executor() {
+            public void execute(final Runnable command) {
+                executor.execute(new Runnable() {
+                    public void run() {
+                        try {
+                            configChanged.await(10, TimeUnit.SECONDS);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                        command.run();
+                    }
+                });
+            }
+        });
+
+        ConfigUtilTestConfig config = new ConfigUtilTestConfig();
+        config.setStringField("requested");
+        CompletableFuture<URL> save = configManager.saveConfigAsync("changed", config);
+        config.setStringField("changed after save");
+        configChanged.countDown();
+
+        save.get(10, TimeUnit.SECONDS);
+        assertEquals("requested", configManager.loadConfig("changed", ConfigUtilTestConfig.class).getStringField());
+    }
+
+    public void testLoadWaitsForWarmUp() throws Exception {
+        configManager.saveConfig("warm", new ConfigUtilTestConfig());
+
+        final CountDownLatch warmUpStarted = new CountDownLatch(1);
+        final CountDownLatch releaseWarmUp = new CountDownLatch(1);
+        final ClasspathMigrationLoader migrationLoader = new ClasspathMigrationLoader();
+        configManager.setMigrationSource(new MigrationSource() {
+            public SortedMap<Long, List<ConfigMigrationStategy>> loadConfigMigrations() throws Exception {
+                //block the first read of the migrations, which is made by the warm up
+                if ( warmUpStarted.getCount() > 0 ) {
+                    warmUpStarted.countDown();
+                    releaseWarmUp.await(10, TimeUnit.SECONDS);
+                }
+                return migrationLoader.loadConfigMigrations();
+            }
+        });
+
+        CompletableFuture<Void> warmUp = configManager.warmUp(Collections.singletonMap("warm", ConfigUtilTestConfig.class));
+        assertTrue(warmUpStarted.await(10, TimeUnit.SECONDS));
+        assertSame("a warm up in progress is not repeated", warmUp, configManager.warmUp());
+        Future<ConfigUtilTestConfig> load = executor.submit(new Callable<ConfigUtilTestConfig>() {
+            public ConfigUtilTestConfig call() throws Exception {
+                return configManager.loadConfig("warm", ConfigUtilTestConfig.class);
+            }
+        });
+
+        Thread.sleep(200);
+        assertFalse("load waits for the warm up", load.isDone());
+        releaseWarmUp.countDown();
+        warmUp.get(10, TimeUnit.SECONDS);
+        assertEquals(new ConfigUtilTestConfig(), load.get(10, TimeUnit.SECONDS));
+        assertSame("a completed warm up is not repeated", warmUp, configManager.warmUp());
+        assertFalse("indexing is left to the caller", ((ConfigDirectorySourceAndSink)configManager.getConfigSource()).isIndexed());
+    }
+
+    private File createTempDirectory() throws Exception {
+        File f = File.createTempFile("testConcurrentConfigManager", "");
+        f.delete();
+        f.mkdir();
+        return f;
+    }
+
+    private class SaveTask implements Callable<Object> {
+        private String configName;
+
+        private SaveTask(String configName) {
+            this.configName = configName;
+        }
+
+        public Object call() throws Exception {
+            return configManager.saveConfig(configName, new ConfigUtilTestConfig());
+        }
+    }
+
+    private static class BlockingLogMethods implements LogMethods {
+        private LogMethods delegate;
+        private String blockingFileName;
+        private CountDownLatch blockStarted;
+        private CountDownLatch release;
+
+        private BlockingLogMethods(LogMethods delegate, String blockingFileName, CountDownLatch blockStarted, CountDownLatch release) {
+            this.delegate = delegate;
+            this.blockingFileName = blockingFileName;
+            this.blockStarted = blockStarted;
+            this.release = release;
+        }
+
+        public void info(String s) {
+            delegate.info(s);
+            //only block the first save, subsequent saves to the same config pass straight through
+            if ( s.startsWith("Writing configuration file") && s.contains(blockingFileName) && blockStarted.getCount() > 0) {
+                blockStarted.countDown();
+                try {
+                    release.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+
+        public void error(String description, Throwable cause) {
+            delegate.error(description, cause);
+        }
+
+        public void error(String description) {
+            delegate.error(description);
+        }
+
+        public void debug(String s) {
+            delegate.debug(s);
+        }
+
+        public void warn(String s) {
+            delegate.warn(s);
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package od.configutil;
+
+import junit.framework.TestCase;
+import od.configutil.migration.ClasspathMigrationLoader;
+
+import java.io.File;
+
+/**
+ * Tests for loading configs through a ConfigCache
+ */
+public class TestConfigCache extends TestCase {
+
+    private File configDirectory;
+    private ConfigManager configManager;
+
+    protected void setUp() throws Exception {
+        configDirectory = File.createTempFile("testConfigCache", "");
+        configDirectory.delete();
+        configDirectory.mkdir();
+        configManager = new ConfigManager(configDirectory);
+        configManager.setMigrationSource(new ClasspathMigrationLoader());
+    }
+
+    protected void tearDown() throws Exception {
+        File[] files = configDirectory.listFiles();
+        if ( files != null ) {
+            for ( File f : files) {
+                f.delete();
+            }
+        }
+        configDirectory.delete();
+    }
+
+    public void testUnchangedConfigIsCached() throws Exception {
+        ConfigCache cache = new ConfigCache(10);
+        configManager.setConfigCache(cache);
+        configManager.saveConfig("cached", createConfig("initial"));
+
+        ConfigUtilTestConfig config = configManager.loadConfig("cached", ConfigUtilTestConfig.class);
+        assertSame(config, configManager.loadConfig("cached", ConfigUtilTestConfig.class));
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+
+        //a changed config is deserialized again
+        configManager.saveConfig("cached", createConfig("changed"));
+        assertEquals("changed", configManager.loadConfig("cached", ConfigUtilTestConfig.class).getStringField());
+        assertEquals(1, cache.getHitCount());
+        assertEquals(2, cache.getMissCount());
+        assertEquals(1, cache.size());
+    }
+
+    public void testLeastRecentlyUsedConfigIsEvicted() throws Exception {
+        ConfigCache cache = new ConfigCache(1);
+        configManager.setConfigCache(cache);
+        configManager.saveConfig("config1", createConfig("1"));
+        configManager.saveConfig("config2", createConfig("2"));
+
+        configManager.loadConfig("config1", ConfigUtilTestConfig.class);
+        configManager.loadConfig("config2", ConfigUtilTestConfig.class);
+        configManager.loadConfig("config1", ConfigUtilTestConfig.class);
+        assertEquals(0, cache.getHitCount());
+        assertEquals(2, cache.getEvictionCount());
+        assertEquals(1, cache.size());
+    }
+
+    public void testCopyStrategy() throws Exception {
+        ConfigCache cache = new ConfigCache(10, new ConfigCache.CopyStrategy() {
+            public <V> V copy(V config) {
+                ConfigUtilTestConfig copy = new ConfigUtilTestConfig();
+                copy.setStringField(((ConfigUtilTestConfig)config).getStringField());
+                return (V)copy;
+            }
+        });
+        configManager.setConfigCache(cache);
+        configManager.saveConfig("copied", createConfig("initial"));
+
+        ConfigUtilTestConfig config = configManager.loadConfig("copied", ConfigUtilTestConfig.class);
+        config.setStringField("modified");
+        ConfigUtilTestConfig config2 = configManager.loadConfig("copied", ConfigUtilTestConfig.class);
+        assertNotSame(config, config2);
+        assertEquals("initial", config2.getStringField());
+        assertEquals(1, cache.getHitCount());
+    }
+
+    private ConfigUtilTestConfig createConfig(String value) {
+        ConfigUtilTestConfig config = new ConfigUtilTestConfig();
+        config.setStringField(value);
+        return config;
+    }
+}
@@ -0,0 +1,178 @@
+package od.configutil;
+
+import junit.framework.TestCase;
+import od.configutil.sinkandsource.ConfigData;
+import od.configutil.sinkandsource.ConfigDirectorySourceAndSink;
+import od.configutil.sinkandsource.URLConfigSource;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.*;
+
+/**
+ * Tests for ConfigDirectorySourceAndSink
+ */
+public class TestConfigDirectorySourceAndSink extends TestCase {
+
+    private static final long VERSION_1 = 201011181800L;
+    private static final long VERSION_2 = 201103201834L;
+    private static final long UNSUPPORTED_VERSION = 209912312359L;
+
+    private File configDirectory;
+    private ConfigDirectorySourceAndSink sourceAndSink;
+    private SortedSet<Long> supportedVersions;
+
+    protected void setUp() throws Exception {
+        configDirectory = File.createTempFile("testConfigDirectorySourceAndSink", "");
+        configDirectory.delete();
+        configDirectory.mkdir();
+        sourceAndSink = new ConfigDirectorySourceAndSink(configDirectory);
+        supportedVersions = new TreeSet<Long>(Arrays.asList(VERSION_1, VERSION_2));
+    }
+
+    protected void tearDown() throws Exception {
+        sourceAndSink.setIndexed(false);
+        sourceAndSink.setWriteBehind(false);
+        File[] files = configDirectory.listFiles();
+        if ( files != null ) {
+            for ( File f : files) {
+                f.delete();
+            }
+        }
+        configDirectory.delete();
+    }
+
+    public void testProbeVersions() throws Exception {
+        writeConfigFile("probe." + VERSION_1 + ".xml", VERSION_1, "<config1/>");
+
+        Map<String, Long> versions = sourceAndSink.probeVersions("probe", supportedVersions);
+        assertEquals(Arrays.asList("probe." + VERSION_2 + ".xml", "probe." + VERSION_1 + ".xml"), new ArrayList<String>(versions.keySet()));
+        assertEquals(-1L, (long)versions.get("probe." + VERSION_2 + ".xml"));
+        assertEquals(VERSION_1, (long)versions.get("probe." + VERSION_1 + ".xml"));
+    }
+
+    public void testLoadSkipsFileWithUnsupportedVersionHeader() throws Exception {
+        writeConfigFile("skip." + VERSION_2 + ".xml", UNSUPPORTED_VERSION, "<config2/>");
+        writeConfigFile("skip." + VERSION_1 + ".xml", VERSION_1, "<config1/>");
+
+        assertEquals(UNSUPPORTED_VERSION, (long)sourceAndSink.probeVersions("skip", supportedVersions).get("skip." + VERSION_2 + ".xml"));
+
+        ConfigData configData = sourceAndSink.loadConfiguration("skip", supportedVersions);
+        assertEquals(VERSION_1, configData.getVersion());
+        assertEquals("<config1/>", configData.getSerializedConfig());
+    }
+
+    public void testIndexedLoad() throws Exception {
+        writeConfigFile("indexed." + VERSION_1 + ".xml", VERSION_1, "<config1/>");
+        sourceAndSink.setIndexed(true);
+        assertTrue(sourceAndSink.isIndexed());
+
+        //only the files present are probed
+        assertEquals(Collections.singleton("indexed." + VERSION_1 + ".xml"), sourceAndSink.probeVersions("indexed", supportedVersions).keySet());
+        assertEquals(0, sourceAndSink.probeVersions("missing", supportedVersions).size());
+
+        //a save through the sink is indexed immediately
+        sourceAndSink.saveConfiguration(new ConfigData("indexed", VERSION_2, "<config2/>"));
+        assertEquals("<config2/>", sourceAndSink.loadConfiguration("indexed", supportedVersions).getSerializedConfig());
+
+        //a file deleted by another process is removed from the index when the WatchService reports it
+        assertTrue(new File(configDirectory, "indexed." + VERSION_2 + ".xml").delete());
+        long timeout = System.currentTimeMillis() + 20000;
+        while (sourceAndSink.probeVersions("indexed", supportedVersions).size() > 1 && System.currentTimeMillis() < timeout) {
+            Thread.sleep(50);
+        }
+        assertEquals("<config1/>", sourceAndSink.loadConfiguration("indexed", supportedVersions).getSerializedConfig());
+    }
+
+    public void testWriteBehindKeepsLatestSave() throws Exception {
+        sourceAndSink.setWriteBehindInterval(60 * 60 * 1000);
+        sourceAndSink.setWriteBehind(true);
+        File configFile = new File(configDirectory, "writeBehind." + VERSION_2 + ".xml");
+
+        for ( int i = 0; i < 10; i++) {
+            sourceAndSink.saveConfiguration(new ConfigData("writeBehind", VERSION_2, "<config" + i + "/>"));
+        }
+        assertFalse(configFile.exists());
+
+        //a load writes the queued config first
+        assertEquals("<config9/>", sourceAndSink.loadConfiguration("writeBehind", supportedVersions).getSerializedConfig());
+        assertTrue(configFile.exists());
+
+        sourceAndSink.saveConfiguration(new ConfigData("writeBehind", VERSION_2, "<config10/>"));
+        sourceAndSink.saveConfiguration(new ConfigData("writeBehind2", VERSION_2, "<config11/>"));
+        sourceAndSink.flush();
+        assertTrue(new File(configDirectory, "writeBehind2." + VERSION_2 + ".xml").exists());
+        sourceAndSink.setWriteBehind(false);
+        assertEquals("<config10/>", sourceAndSink.loadConfiguration("writeBehind", supportedVersions).getSerializedConfig());
+
+        //queued configs are also written periodically
+        sourceAndSink.setWriteBehindInterval(50);
+        sourceAndSink.setWriteBehind(true);
+        sourceAndSink.saveConfiguration(new ConfigData("periodic", VERSION_2, "<config/>"));
+        File periodicFile = new File(configDirectory, "periodic." + VERSION_2 + ".xml");
+        long timeout = System.currentTimeMillis() + 20000;
+        while ( ! periodicFile.exists() && System.currentTimeMillis() < timeout) {
+            Thread.sleep(10);
+        }
+        assertTrue(periodicFile.exists());
+    }
+
+    public void testSkipUnchangedSave() throws Exception {
+        sourceAndSink.setSkipUnchanged(true);
+        File backupFile = new File(configDirectory, "skip." + VERSION_2 + ".xml.bak");
+
+        sourceAndSink.saveConfiguration(new ConfigData("skip", VERSION_2, "<config1/>"));
+        sourceAndSink.saveConfiguration(new ConfigData("skip", VERSION_2, "<config1/>"));
+        assertFalse("unchanged config is not written, so no backup is made", backupFile.exists());
+
+        sourceAndSink.saveConfiguration(new ConfigData("skip", VERSION_2, "<config2/>"));
+        assertTrue(backupFile.exists());
+        assertTrue(backupFile.delete());
+
+        //a sink which did not write the file compares the config with the file contents
+        ConfigDirectorySourceAndSink otherSink = new ConfigDirectorySourceAndSink(configDirectory);
+        otherSink.setSkipUnchanged(true);
+        otherSink.saveConfiguration(new ConfigData("skip", VERSION_2, "<config2/>"));
+        assertFalse(backupFile.exists());
+        otherSink.saveConfiguration(new ConfigData("skip", VERSION_2, "<config3/>"));
+        assertTrue(backupFile.exists());
+        assertEquals("<config3/>", sourceAndSink.loadConfiguration("skip", supportedVersions).getSerializedConfig());
+    }
+
+    public void testCompressedSave() throws Exception {
+        StringBuilder sb = new StringBuilder("<config>");
+        for ( int loop = 0; loop < 1000; loop++) {
+            sb.append("<item name=\"item").append(loop).append("\"/>");
+        }
+        String config = sb.append("</config>").toString();
+        File configFile = new File(configDirectory, "compressed." + VERSION_2 + ".xml");
+
+        sourceAndSink.saveConfiguration(new ConfigData("compressed", VERSION_2, config));
+        long uncompressedLength = configFile.length();
+        sourceAndSink.setCompressed(true);
+        sourceAndSink.saveConfiguration(new ConfigData("compressed", VERSION_2, config));
+        assertTrue(configFile.length() * 5 < uncompressedLength);
+
+        //the version header is not compressed
+        assertEquals(VERSION_2, (long)sourceAndSink.probeVersions("compressed", supportedVersions).get(configFile.getName()));
+        assertEquals(config, sourceAndSink.loadConfiguration("compressed", supportedVersions).getSerializedConfig());
+        assertEquals(config, new URLConfigSource(configDirectory.toURI().toURL()).loadConfiguration(configFile.getName(), supportedVersions).getSerializedConfig());
+
+        //uncompressed configs can still be loaded
+        writeConfigFile("compressed." + VERSION_2 + ".xml", VERSION_2, "<config2/>");
+        assertEquals("<config2/>", sourceAndSink.loadConfiguration("compressed", supportedVersions).getSerializedConfig());
+        assertEquals("<config2/>", new URLConfigSource(configDirectory.toURI().toURL()).loadConfiguration(configFile.getName(), supportedVersions).getSerializedConfig());
+    }
+
+    private void writeConfigFile(String fileName, long headerVersion, String config) throws Exception {
+        Writer w = new OutputStreamWriter(new FileOutputStream(new File(configDirectory, fileName)), "UTF-8");
+        try {
+            w.write("<!-- configVersion=" + headerVersion + " -->\n");
+            w.write(config);
+        } finally {
+            w.close();
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package od.configutil;
+
+import junit.framework.TestCase;
+import od.configutil.migration.ClasspathMigrationLoader;
+import od.configutil.sinkandsource.FileSink;
+import od.configutil.sinkandsource.FileSource;
+
+import java.io.File;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests for ConfigListener notification when a saved config changes
+ */
+public class TestConfigListener extends TestCase {
+
+    private File configDirectory;
+    private ConfigManager configManager;
+    private BlockingQueue<ConfigUtilTestConfig> changes = new LinkedBlockingQueue<ConfigUtilTestConfig>();
+    private ConfigListener<ConfigUtilTestConfig> listener = new ConfigListener<ConfigUtilTestConfig>() {
+        public void configChanged(String configName, ConfigUtilTestConfig config) {
+            changes.add(config);
+        }
+    };
+
+    protected void setUp() throws Exception {
+        configDirectory = File.createTempFile("testConfigListener", "");
+        configDirectory.delete();
+        configDirectory.mkdir();
+        configManager = new ConfigManager(configDirectory);
+        configManager.setMigrationSource(new ClasspathMigrationLoader());
+        configManager.setConfigListenerDebounceTime(50);
+        configManager.setConfigListenerPollInterval(50);
+    }
+
+    protected void tearDown() throws Exception {
+        configManager.removeConfigListener("watched", listener);
+        File[] files = configDirectory.listFiles();
+        if ( files != null ) {
+            for ( File f : files) {
+                f.delete();
+            }
+        }
+        configDirectory.delete();
+    }
+
+    public void testDirectoryConfigChange() throws Exception {
+        configManager.saveConfig("watched", createConfig("initial"));
+        configManager.addConfigListener("watched", ConfigUtilTestConfig.class, listener);
+
+        //a save from another ConfigManager sharing the directory
+        ConfigManager otherConfigManager = new ConfigManager(configDirectory);
+        otherConfigManager.setMigrationSource(new ClasspathMigrationLoader());
+        otherConfigManager.saveConfig("watched", createConfig("changed"));
+        assertEquals("changed", takeChange().getStringField());
+
+        //saving a config to a different name does not notify
+        otherConfigManager.saveConfig("notWatched", createConfig("other"));
+
+        //saving the same content again rewrites the file, but does not notify
+        otherConfigManager.saveConfig("watched", createConfig("changed"));
+        assertNull(changes.poll(500, TimeUnit.MILLISECONDS));
+    }
+
+    public void testFileSourceConfigChange() throws Exception {
+        File f = new File(configDirectory, "watchedFile.xml");
+        configManager.saveConfig("watched", createConfig("initial"), new FileSink(f));
+        configManager.setConfigSource(new FileSource(f));
+        configManager.addConfigListener("watched", ConfigUtilTestConfig.class, listener);
+
+        //make sure the last modified time changes, since file systems may only record seconds
+        Thread.sleep(1100);
+        configManager.saveConfig("watched", createConfig("changed"), new FileSink(f));
+        assertEquals("changed", takeChange().getStringField());
+    }
+
+    public void testListenersForSameNameWithDifferentSources() throws Exception {
+        configManager.saveConfig("watched", createConfig("initial"));
+        configManager.addConfigListener("watched", ConfigUtilTestConfig.class, listener);
+
+        //a listener added after the config source changes watches the new source
+        final BlockingQueue<ConfigUtilTestConfig> fileChanges = new LinkedBlockingQueue<ConfigUtilTestConfig>();
+        ConfigListener<ConfigUtilTestConfig> fileListener = new ConfigListener<ConfigUtilTestConfig>() {
+            public void configChanged(String configName, ConfigUtilTestConfig config) {
+                fileChanges.add(config);
+            }
+        };
+        File f = new File(configDirectory, "watchedFile.xml");
+        configManager.saveConfig("watched", createConfig("initial"), new FileSink(f));
+        configManager.setConfigSource(new FileSource(f));
+        configManager.addConfigListener("watched", ConfigUtilTestConfig.class, fileListener);
+        try {
+            Thread.sleep(1100);
+            configManager.saveConfig("watched", createConfig("changed"), new FileSink(f));
+            ConfigUtilTestConfig config = fileChanges.poll(20, TimeUnit.SECONDS);
+            assertNotNull("Listener on the file source should be notified", config);
+            assertEquals("changed", config.getStringField());
+            assertNull("the directory config did not change", changes.poll(500, TimeUnit.MILLISECONDS));
+        } finally {
+            configManager.removeConfigListener("watched", fileListener);
+        }
+    }
+
+    private ConfigUtilTestConfig takeChange() throws InterruptedException {
+        ConfigUtilTestConfig config = changes.poll(20, TimeUnit.SECONDS);
+        assertNotNull("Listener should be notified", config);
+        return config;
+    }
+
+    private ConfigUtilTestConfig createConfig(String value) {
+        ConfigUtilTestConfig config = new ConfigUtilTestConfig();
+        config.setStringField(value);
+        return config;
+    }
+}
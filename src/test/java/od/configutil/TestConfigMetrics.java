@@ -0,0 +1,171 @@
+package od.configutil;
+
+import junit.framework.TestCase;
+import od.configutil.metrics.ConfigMetricsImplementation;
+import od.configutil.metrics.ConfigPhase;
+import od.configutil.metrics.InMemoryConfigMetrics;
+import od.configutil.metrics.PhaseStatistics;
+import od.configutil.migration.ClasspathMigrationLoader;
+import od.configutil.serializer.ConfigSerializer;
+import od.configutil.serializer.XStreamSeralizer;
+import od.configutil.sinkandsource.AbstractConfigSink;
+import od.configutil.sinkandsource.ConfigData;
+
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.TabularData;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.net.URL;
+import java.util.Arrays;
+
+/**
+ * Tests for recording metrics with InMemoryConfigMetrics
+ */
+public class TestConfigMetrics extends TestCase {
+
+    private static final long OLD_VERSION = 201011181800L;
+
+    private File configDirectory;
+    private ConfigManager configManager;
+    private InMemoryConfigMetrics metrics;
+
+    protected void setUp() throws Exception {
+        configDirectory = File.createTempFile("testConfigMetrics", "");
+        configDirectory.delete();
+        configDirectory.mkdir();
+        configManager = new ConfigManager(configDirectory);
+        configManager.setMigrationSource(new ClasspathMigrationLoader());
+        metrics = new InMemoryConfigMetrics();
+        ConfigMetricsImplementation.setConfigMetrics(metrics);
+    }
+
+    protected void tearDown() throws Exception {
+        ConfigMetricsImplementation.setConfigMetrics(new ConfigMetricsImplementation());
+        metrics.unregisterMBean();
+        File[] files = configDirectory.listFiles();
+        if ( files != null ) {
+            for ( File f : files) {
+                f.delete();
+            }
+        }
+        configDirectory.delete();
+    }
+
+    public void testLoadAndSaveMetrics() throws Exception {
+        configManager.saveConfig("metrics", new ConfigUtilTestConfig());
+        configManager.loadConfig("metrics", ConfigUtilTestConfig.class);
+        ConfigSerializer nonStreamingSerializer = new ConfigSerializer() {
+            private XStreamSeralizer serializer = new XStreamSeralizer();
+
+            public String serialize(Object configObject) throws Exception {
+                return serializer.serialize(configObject);
+            }
+
+            public <V> V deserialize(String serializedConfig, Class<V> clazz) throws Exception {
+                return serializer.deserialize(serializedConfig, clazz);
+            }
+        };
+        configManager.saveConfig("nonStreaming", new ConfigUtilTestConfig(), nonStreamingSerializer);
+        configManager.loadConfig("nonStreaming", ConfigUtilTestConfig.class, nonStreamingSerializer);
+        try {
+            configManager.loadConfig("missing", ConfigUtilTestConfig.class);
+            fail("Load of a missing config should fail");
+        } catch (NoConfigFoundException e) {
+        }
+
+        for ( ConfigPhase phase : Arrays.asList(ConfigPhase.LOAD, ConfigPhase.SAVE)) {
+            assertEquals(2, metrics.getPhaseStatistics(phase).getCount());
+        }
+        //the time to read and serialize is only recorded separately when the serializer is not streaming
+        for ( ConfigPhase phase : Arrays.asList(ConfigPhase.READ, ConfigPhase.SERIALIZE)) {
+            assertEquals(1, metrics.getPhaseStatistics(phase).getCount());
+        }
+        assertEquals(2, metrics.getPhaseStatistics(ConfigPhase.DESERIALIZE).getCount());
+        assertEquals(2, metrics.getPhaseStatistics(ConfigPhase.WRITE).getCount());
+        assertEquals(1, metrics.getPhaseStatistics(ConfigPhase.LOAD).getFailureCount());
+
+        long fileLengths = new File(configDirectory, "metrics.201103201834.xml").length() + new File(configDirectory, "nonStreaming.201103201834.xml").length();
+        assertEquals(fileLengths, metrics.getBytesWritten());
+        assertEquals(fileLengths, metrics.getBytesRead());
+
+        PhaseStatistics loadStatistics = metrics.getPhaseStatistics(ConfigPhase.LOAD);
+        assertTrue(loadStatistics.getMedianMillis() > 0);
+        assertTrue(loadStatistics.getMedianMillis() <= loadStatistics.getPercentile99Millis());
+        assertTrue(loadStatistics.getPercentile99Millis() <= loadStatistics.getMaxMillis());
+    }
+
+    public void testStreamedLoadOfMigratedConfigRecordsRead() throws Exception {
+        writeOldConfig("migrated");
+        configManager.loadConfig("migrated", ConfigUtilTestConfig.class);
+
+        //a config which needs migrating is read fully before it is migrated, so the read is timed separately
+        assertEquals(1, metrics.getPhaseStatistics(ConfigPhase.READ).getCount());
+        assertEquals(1, metrics.getPhaseStatistics(ConfigPhase.MIGRATE).getCount());
+        assertEquals(1, metrics.getPhaseStatistics(ConfigPhase.DESERIALIZE).getCount());
+    }
+
+    public void testMigrationAndCacheMetrics() throws Exception {
+        writeOldConfig("migrated");
+
+        configManager.setConfigCache(new ConfigCache(10));
+        configManager.loadConfig("migrated", ConfigUtilTestConfig.class);
+        configManager.loadConfig("migrated", ConfigUtilTestConfig.class);
+
+        assertEquals(1, metrics.getCacheMisses());
+        assertEquals(1, metrics.getCacheHits());
+        assertEquals(1, metrics.getPhaseStatistics(ConfigPhase.MIGRATE).getCount());
+        assertEquals(Long.valueOf(1), metrics.getMigrationsByFromVersion().get(OLD_VERSION));
+    }
+
+    public void testBytesWrittenBySinkWithoutFile() throws Exception {
+        final ByteArrayOutputStream written = new ByteArrayOutputStream();
+        AbstractConfigSink sink = new AbstractConfigSink("UTF-8") {
+            protected String getConfigFileName(String configName, long version) {
+                return configName + "." + version + ".xml";
+            }
+
+            protected URL writeConfig(ConfigData configuration, String fileName) throws Exception {
+                writeConfigToStream(written, configuration.getSerializedConfig(), configuration.getVersion());
+                return null;
+            }
+
+            public boolean canWrite() {
+                return true;
+            }
+        };
+        sink.setSkipUnchanged(true);
+        sink.saveConfiguration(new ConfigData("noFile", 1, "<config/>"));
+
+        assertTrue(written.size() > 0);
+        assertEquals(written.size(), metrics.getBytesWritten());
+    }
+
+    public void testMBean() throws Exception {
+        configManager.saveConfig("mbean", new ConfigUtilTestConfig());
+        ObjectName name = metrics.registerMBean();
+
+        assertEquals(metrics.getBytesWritten(), ManagementFactory.getPlatformMBeanServer().getAttribute(name, "BytesWritten"));
+        TabularData phaseStatistics = (TabularData)ManagementFactory.getPlatformMBeanServer().getAttribute(name, "PhaseStatistics");
+        CompositeData save = (CompositeData)phaseStatistics.get(new Object[] { ConfigPhase.SAVE.name() }).get("value");
+        assertEquals(1L, save.get("count"));
+
+        ManagementFactory.getPlatformMBeanServer().invoke(name, "reset", new Object[0], new String[0]);
+        assertEquals(0, metrics.getPhaseStatistics(ConfigPhase.SAVE).getCount());
+        assertEquals(0, metrics.getBytesWritten());
+    }
+
+    private void writeOldConfig(String configName) throws Exception {
+        Writer w = new OutputStreamWriter(new FileOutputStream(new File(configDirectory, configName + "." + OLD_VERSION + ".xml")), "UTF-8");
+        try {
+            w.write("<!-- configVersion=" + OLD_VERSION + " -->\n");
+            w.write("<od.configutil.ConfigUtilTestConfig><stringField>Last RefreshX</stringField></od.configutil.ConfigUtilTestConfig>");
+        } finally {
+            w.close();
+        }
+    }
+}
@@ -1,10 +1,20 @@
 package od.configutil;
 
 import junit.framework.TestCase;
+import od.configutil.serializer.XStreamSeralizer;
+import od.configutil.sinkandsource.ConfigData;
 import od.configutil.sinkandsource.FileSink;
 import od.configutil.sinkandsource.FileSource;
 
 import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.URL;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.TreeSet;
+import java.util.concurrent.*;
 
 /**
  * Created by IntelliJ IDEA.
@@ -30,4 +40,84 @@ public class TestFileSourceAndFileSink extends TestCase {
         assertEquals("Config 1 and 2", config, config2);
     }
 
+    public void testConcurrentSavesWithSkipUnchanged() throws Exception {
+        File f = File.createTempFile("temp", "xml");
+        f.deleteOnExit();
+
+        final CountDownLatch configAWritten = new CountDownLatch(1);
+        final CountDownLatch configBSaved = new CountDownLatch(1);
+        final FileSink configSink = new FileSink(f) {
+            protected URL writeConfig(ConfigData configuration, String fileName) throws Exception {
+                URL result = super.writeConfig(configuration, fileName);
+                if ( configuration.getSerializedConfig().equals("<configA/>")) {
+                    configAWritten.countDown();
+                    //let the save of configB complete before this save records what it wrote, if it can
+                    configBSaved.await(500, TimeUnit.MILLISECONDS);
+                }
+                return result;
+            }
+        };
+        configSink.setSkipUnchanged(true);
+        //the same length, so that only the content differs
+        final ConfigData configA = new ConfigData("concurrent", 1, "<configA/>");
+        final ConfigData configB = new ConfigData("concurrent", 1, "<configB/>");
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<URL> saveA = executor.submit(new Callable<URL>() {
+                public URL call() throws Exception {
+                    return configSink.saveConfiguration(configA);
+                }
+            });
+            Future<URL> saveB = executor.submit(new Callable<URL>() {
+                public URL call() throws Exception {
+                    configAWritten.await(10, TimeUnit.SECONDS);
+                    URL result = configSink.saveConfiguration(configB);
+                    configBSaved.countDown();
+                    return result;
+                }
+            });
+            saveA.get(10, TimeUnit.SECONDS);
+            saveB.get(10, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdown();
+        }
+
+        //the file contains configB, so saving configA again must write it
+        configSink.saveConfiguration(configA);
+        assertTrue(new String(Files.readAllBytes(f.toPath()), "UTF-8").endsWith("<configA/>"));
+    }
+
+    public void testLoadLargeConfigWithWindowsLineEndings() throws Exception {
+        ConfigManager c = new ConfigManager();
+
+        File f = File.createTempFile("temp", "xml");
+        f.deleteOnExit();
+
+        //larger than the buffers which FileSource will retain between loads
+        StringBuilder value = new StringBuilder();
+        while (value.length() < 2 * 1024 * 1024) {
+            value.append("0123456789");
+        }
+        ConfigUtilTestConfig config = new ConfigUtilTestConfig();
+        config.setStringField(value.toString());
+
+        Writer w = new OutputStreamWriter(new FileOutputStream(f), "UTF-8");
+        try {
+            w.write("<!-- configVersion=201103201834 -->\r\n");
+            w.write(new XStreamSeralizer().serialize(config));
+        } finally {
+            w.close();
+        }
+
+        FileSource fileSource = new FileSource(f);
+        assertEquals(config, c.loadConfig("testLoadLargeConfig", ConfigUtilTestConfig.class, fileSource));
+        assertEquals(config, c.loadConfig("testLoadLargeConfig", ConfigUtilTestConfig.class, fileSource));
+
+        fileSource.setMemoryMapped(true);
+        assertEquals(config, c.loadConfig("testLoadLargeConfig", ConfigUtilTestConfig.class, fileSource));
+        ConfigData configData = fileSource.loadConfiguration("testLoadLargeConfig", new TreeSet<Long>(Collections.singleton(201103201834L)));
+        assertEquals(config, new XStreamSeralizer().deserialize(configData.getSerializedConfig(), ConfigUtilTestConfig.class));
+    }
+
 }
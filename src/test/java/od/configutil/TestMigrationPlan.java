@@ -0,0 +1,152 @@
+package od.configutil;
+
+import junit.framework.TestCase;
+import od.configutil.migration.ClasspathMigrationLoader;
+import od.configutil.migration.CombinedRegexMigrationStrategy;
+import od.configutil.migration.ConfigMigrationStategy;
+import od.configutil.migration.MigrationPlan;
+import od.configutil.migration.MigrationPlanCache;
+import od.configutil.migration.MigrationSource;
+import od.configutil.migration.RegexMigrationStrategy;
+
+import java.util.*;
+
+/**
+ * Tests for MigrationPlan and MigrationPlanCache
+ */
+public class TestMigrationPlan extends TestCase {
+
+    private SortedMap<Long, List<ConfigMigrationStategy>> migrations;
+
+    protected void setUp() throws Exception {
+        migrations = new TreeMap<Long, List<ConfigMigrationStategy>>();
+        migrations.put(1L, Arrays.<ConfigMigrationStategy>asList(new AppendStrategy("a")));
+        migrations.put(2L, Arrays.<ConfigMigrationStategy>asList(new AppendStrategy("b"), new AppendStrategy("c")));
+        migrations.put(3L, Arrays.<ConfigMigrationStategy>asList(new AppendStrategy("d")));
+    }
+
+    public void testPlanRunsLaterMigrationsInOrder() {
+        MigrationPlan plan = MigrationPlan.compile(migrations, 1L);
+        assertEquals(1L, plan.getFromVersion());
+        assertEquals(3L, plan.getToVersion());
+        assertEquals(3, plan.getStrategyCount());
+        assertEquals("-bcd", plan.migrate("test", "-"));
+        assertEquals(0, MigrationPlan.compile(migrations, 3L).getStrategyCount());
+    }
+
+    public void testCompileDoesNotModifyMigrations() {
+        MigrationPlanCache cache = new MigrationPlanCache();
+        for ( long version = 1; version <= 3; version++) {
+            cache.getMigrationPlan(migrations, version);
+        }
+        assertEquals(3, migrations.size());
+        assertEquals(Arrays.asList(1L, 2L, 3L), new ArrayList<Long>(migrations.keySet()));
+    }
+
+    public void testPlansAreCachedUntilMigrationsChange() {
+        MigrationPlanCache cache = new MigrationPlanCache();
+        MigrationPlan plan = cache.getMigrationPlan(migrations, 1L);
+        assertSame(plan, cache.getMigrationPlan(migrations, 1L));
+        assertNotSame(plan, cache.getMigrationPlan(migrations, 2L));
+
+        SortedMap<Long, List<ConfigMigrationStategy>> reloaded = new TreeMap<Long, List<ConfigMigrationStategy>>(migrations);
+        reloaded.put(4L, Arrays.<ConfigMigrationStategy>asList(new AppendStrategy("e")));
+        MigrationPlan reloadedPlan = cache.getMigrationPlan(reloaded, 1L);
+        assertNotSame(plan, reloadedPlan);
+        assertEquals("-bcde", reloadedPlan.migrate("test", "-"));
+    }
+
+    public void testPlansAreReusedWhenNonCachingSourceSuppliesSameStrategies() throws Exception {
+        //like ClasspathMigrationLoader used without CachingMigrationSource, each load returns a new map
+        MigrationSource nonCachingSource = new MigrationSource() {
+            public SortedMap<Long, List<ConfigMigrationStategy>> loadConfigMigrations() {
+                return new TreeMap<Long, List<ConfigMigrationStategy>>(migrations);
+            }
+        };
+        MigrationPlanCache cache = new MigrationPlanCache();
+        SortedMap<Long, List<ConfigMigrationStategy>> firstLoad = nonCachingSource.loadConfigMigrations();
+        MigrationPlan plan = cache.getMigrationPlan(firstLoad, 1L);
+        SortedMap<Long, List<ConfigMigrationStategy>> secondLoad = nonCachingSource.loadConfigMigrations();
+        assertNotSame(firstLoad, secondLoad);
+        assertSame(plan, cache.getMigrationPlan(secondLoad, 1L));
+        assertSame(plan, cache.getMigrationPlan(nonCachingSource.loadConfigMigrations(), 1L));
+
+        //the same versions with a different strategy instance require a new plan
+        migrations.put(3L, Arrays.<ConfigMigrationStategy>asList(new AppendStrategy("e")));
+        MigrationPlan changedPlan = cache.getMigrationPlan(nonCachingSource.loadConfigMigrations(), 1L);
+        assertNotSame(plan, changedPlan);
+        assertEquals("-bce", changedPlan.migrate("test", "-"));
+    }
+
+    public void testPlansAreReusedForClasspathMigrationLoader() throws Exception {
+        ClasspathMigrationLoader loader = new ClasspathMigrationLoader();
+        SortedMap<Long, List<ConfigMigrationStategy>> firstLoad = loader.loadConfigMigrations();
+        SortedMap<Long, List<ConfigMigrationStategy>> secondLoad = loader.loadConfigMigrations();
+        assertNotSame(firstLoad, secondLoad);
+
+        MigrationPlanCache cache = new MigrationPlanCache();
+        MigrationPlan plan = cache.getMigrationPlan(firstLoad, firstLoad.firstKey());
+        assertSame(plan, cache.getMigrationPlan(secondLoad, secondLoad.firstKey()));
+    }
+
+    public void testAdjacentRegexMigrationsAreCombined() {
+        SortedMap<Long, List<ConfigMigrationStategy>> regexMigrations = new TreeMap<Long, List<ConfigMigrationStategy>>();
+        regexMigrations.put(1L, Collections.<ConfigMigrationStategy>emptyList());
+        regexMigrations.put(2L, Arrays.<ConfigMigrationStategy>asList(new RegexMigrationStrategy(2, new String[] {"od\\.OldA", "od.NewA"})));
+        regexMigrations.put(3L, Arrays.<ConfigMigrationStategy>asList(new RegexMigrationStrategy(3, new String[] {"od\\.OldB", "od.NewB"})));
+        regexMigrations.put(4L, Arrays.<ConfigMigrationStategy>asList(new AppendStrategy("-"), new RegexMigrationStrategy(4, new String[] {"New", "Newer"})));
+
+        MigrationPlan plan = MigrationPlan.compile(regexMigrations, 1L);
+        assertEquals(3, plan.getStrategyCount());
+        assertEquals("od.NewerA od.NewerB od.OldC-", plan.migrate("test", "od.OldA od.OldB od.OldC"));
+    }
+
+    public void testRegexSubclassesAreNotCombined() {
+        SortedMap<Long, List<ConfigMigrationStategy>> regexMigrations = new TreeMap<Long, List<ConfigMigrationStategy>>();
+        regexMigrations.put(1L, Collections.<ConfigMigrationStategy>emptyList());
+        regexMigrations.put(2L, Arrays.<ConfigMigrationStategy>asList(new RegexMigrationStrategy(2, new String[] {"od\\.OldA", "od.NewA"})));
+        regexMigrations.put(3L, Arrays.<ConfigMigrationStategy>asList(new RegexMigrationStrategy(3, new String[] {"od\\.OldB", "od.NewB"}) {
+            public String migrate(String configKey, String source) {
+                return super.migrate(configKey, source) + "-";
+            }
+        }));
+
+        MigrationPlan plan = MigrationPlan.compile(regexMigrations, 1L);
+        assertEquals(2, plan.getStrategyCount());
+        assertEquals("od.NewA od.NewB-", plan.migrate("test", "od.OldA od.OldB"));
+    }
+
+    public void testCombinedRegexGivesSameResultAsSeparateMigrations() {
+        String[] arguments = new String[] {
+            "Alpha", "Beta",
+            "Gamma", "Delta",
+            //a later find which matches an earlier replacement must be applied in a later pass
+            "Beta", "Epsilon",
+            "(\\w+)@", "$1 at ",
+            "Zeta", "",
+            "Eta", "Theta"
+        };
+        String config = "Alpha Gamma Beta x@y EZetata Eta";
+
+        String separatelyMigrated = config;
+        for ( int loop = 0; loop < arguments.length; loop += 2) {
+            separatelyMigrated = new RegexMigrationStrategy(1, new String[] {arguments[loop], arguments[loop + 1]}).migrate("test", separatelyMigrated);
+        }
+
+        CombinedRegexMigrationStrategy strategy = new CombinedRegexMigrationStrategy(1, arguments);
+        assertEquals(separatelyMigrated, strategy.migrate("test", config));
+        assertEquals(5, strategy.getPassCount());
+    }
+
+    private static class AppendStrategy implements ConfigMigrationStategy {
+        private String suffix;
+
+        private AppendStrategy(String suffix) {
+            this.suffix = suffix;
+        }
+
+        public String migrate(String configKey, String source) {
+            return source + suffix;
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package od.configutil;
+
+import com.thoughtworks.xstream.annotations.XStreamAlias;
+import junit.framework.TestCase;
+import od.configutil.migration.ClasspathMigrationLoader;
+import od.configutil.serializer.BeanPersistenceSerializer;
+import od.configutil.serializer.BinaryXStreamSerializer;
+import od.configutil.serializer.ConfigSerializer;
+import od.configutil.serializer.XStreamSeralizer;
+import od.configutil.sinkandsource.ConfigData;
+import od.configutil.sinkandsource.FileSource;
+import org.xml.sax.InputSource;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.*;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+/**
+ * Tests for saving and loading using the streaming serializer, sink and source paths
+ */
+public class TestStreamingSerializer extends TestCase {
+
+    private static final String NON_ASCII_VALUE = "Caf\u00e9 \u20ac \u4e2d";
+
+    private File configDirectory;
+    private ConfigManager configManager;
+
+    protected void setUp() throws Exception {
+        configDirectory = File.createTempFile("testStreamingSerializer", "");
+        configDirectory.delete();
+        configDirectory.mkdir();
+        configManager = new ConfigManager(configDirectory);
+        configManager.setMigrationSource(new ClasspathMigrationLoader());
+    }
+
+    protected void tearDown() throws Exception {
+        File[] files = configDirectory.listFiles();
+        if ( files != null ) {
+            for ( File f : files) {
+                f.delete();
+            }
+        }
+        configDirectory.delete();
+    }
+
+    public void testXStreamRoundTrip() throws Exception {
+        doRoundTrip(new XStreamSeralizer());
+    }
+
+    public void testStreamingXmlDriverRoundTrip() throws Exception {
+        XStreamSeralizer xppSerializer = new XStreamSeralizer(XStreamSeralizer.XmlDriver.XPP);
+        xppSerializer.warmUp(ConfigUtilTestConfig.class);
+        doRoundTrip(xppSerializer);
+
+        XStreamSeralizer staxSerializer = new XStreamSeralizer(XStreamSeralizer.XmlDriver.STAX);
+        staxSerializer.warmUp(ConfigUtilTestConfig.class);
+        doRoundTrip(staxSerializer);
+
+        //configs written with the dom driver can be read with the streaming drivers
+        ConfigUtilTestConfig config = new ConfigUtilTestConfig();
+        config.setStringField(NON_ASCII_VALUE);
+        configManager.saveConfig("dom", config, new XStreamSeralizer());
+        assertEquals(config, configManager.loadConfig("dom", ConfigUtilTestConfig.class, xppSerializer));
+        assertEquals(config, configManager.loadConfig("dom", ConfigUtilTestConfig.class, staxSerializer));
+    }
+
+    public void testWarmUpDoesNotChangeXml() throws Exception {
+        AliasedConfig config = new AliasedConfig();
+        String xml = new XStreamSeralizer().serialize(config);
+
+        XStreamSeralizer warmedSerializer = new XStreamSeralizer();
+        warmedSerializer.warmUp(AliasedConfig.class);
+        assertEquals(xml, warmedSerializer.serialize(config));
+
+        //annotations are only used when asked for
+        warmedSerializer.processAnnotations(AliasedConfig.class);
+        assertTrue(warmedSerializer.serialize(config).startsWith("<aliased>"));
+    }
+
+    public void testBeanPersistenceRoundTrip() throws Exception {
+        doRoundTrip(new BeanPersistenceSerializer());
+
+        //the streamed config must be well formed xml, so that xml migrations can be applied to it
+        SortedSet<Long> versions = new TreeSet<Long>(configManager.getMigrationSource().loadConfigMigrations().keySet());
+        String savedConfig = configManager.getConfigSource().loadConfiguration("roundTrip", versions).getSerializedConfig();
+        assertTrue(savedConfig.trim().endsWith("</java>"));
+        DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(new InputSource(new StringReader(savedConfig)));
+    }
+
+    public void testBinaryRoundTrip() throws Exception {
+        doRoundTrip(new BinaryXStreamSerializer());
+
+        //configs saved as xml can still be loaded
+        ConfigUtilTestConfig config = new ConfigUtilTestConfig();
+        config.setStringField(NON_ASCII_VALUE);
+        configManager.saveConfig("xml", config, new XStreamSeralizer());
+        assertEquals(config, configManager.loadConfig("xml", ConfigUtilTestConfig.class, new BinaryXStreamSerializer()));
+    }
+
+    public void testBinaryConfigSize() throws Exception {
+        ArrayList<ConfigUtilTestConfig> configs = new ArrayList<ConfigUtilTestConfig>();
+        for ( int loop = 0; loop < 100; loop++) {
+            ConfigUtilTestConfig config = new ConfigUtilTestConfig();
+            config.setStringField("Last Refresh Time " + loop);
+            configs.add(config);
+        }
+        String xml = new XStreamSeralizer().serialize(configs);
+        String binary = new BinaryXStreamSerializer().serialize(configs);
+        //even after Base64 encoding, which adds a third, the binary config is less than half the size
+        assertTrue("binary " + binary.length() + " xml " + xml.length(), binary.length() * 2 < xml.length());
+        assertEquals("no line breaks", -1, binary.indexOf('\n'));
+
+        //configs written with MIME line breaks can still be read
+        byte[] binaryBytes = Base64.getDecoder().decode(binary.substring(BinaryXStreamSerializer.BINARY_PREFIX.length()));
+        String mimeBinary = BinaryXStreamSerializer.BINARY_PREFIX + Base64.getMimeEncoder().encodeToString(binaryBytes);
+        assertTrue(mimeBinary.contains("\r\n"));
+        assertEquals(configs, new BinaryXStreamSerializer().deserialize(mimeBinary, ArrayList.class));
+    }
+
+    public void testOldBinaryVersionIsMigratedAsXml() throws Exception {
+        ConfigUtilTestConfig config = new ConfigUtilTestConfig();
+        config.setStringField("Last RefreshX");
+        String binaryConfig = new BinaryXStreamSerializer().serialize(config);
+        assertTrue(BinaryXStreamSerializer.isBinary(binaryConfig));
+        assertEquals(new XStreamSeralizer().serialize(config), BinaryXStreamSerializer.toXml(binaryConfig));
+
+        File oldConfig = new File(configDirectory, "migratedBinary.201011181800.xml");
+        Writer w = new OutputStreamWriter(new FileOutputStream(oldConfig), "UTF-8");
+        try {
+            w.write("<!-- configVersion=201011181800 -->\n");
+            w.write(binaryConfig);
+        } finally {
+            w.close();
+        }
+
+        ConfigUtilTestConfig loaded = configManager.loadConfig("migratedBinary", ConfigUtilTestConfig.class, new BinaryXStreamSerializer());
+        assertEquals("Last Refresh Time", loaded.getStringField());
+    }
+
+    public void testOldVersionIsMigratedBeforeDeserialization() throws Exception {
+        File oldConfig = new File(configDirectory, "migrated.201011181800.xml");
+        Writer w = new OutputStreamWriter(new FileOutputStream(oldConfig), "UTF-8");
+        try {
+            w.write("<!-- configVersion=201011181800 -->\n");
+            w.write("<od.configutil.ConfigUtilTestConfig><stringField>Last RefreshX</stringField></od.configutil.ConfigUtilTestConfig>");
+        } finally {
+            w.close();
+        }
+
+        ConfigUtilTestConfig loaded = configManager.loadConfig("migrated", ConfigUtilTestConfig.class);
+        assertEquals("Last Refresh Time", loaded.getStringField());
+    }
+
+    public void testFailedSerializationLeavesNoTempFile() throws Exception {
+        try {
+            configManager.saveConfig("failed", new ConfigUtilTestConfig(), new XStreamSeralizer() {
+                public void serialize(Object configObject, Writer writer) throws Exception {
+                    writer.write("<partial");
+                    throw new IOException("Serialization failed");
+                }
+            });
+            fail("Save should fail");
+        } catch (Exception e) {
+        }
+        assertEquals(0, configDirectory.listFiles().length);
+    }
+
+    private void doRoundTrip(ConfigSerializer serializer) throws Exception {
+        ConfigUtilTestConfig config = new ConfigUtilTestConfig();
+        config.setStringField(NON_ASCII_VALUE);
+
+        URL url = configManager.saveConfig("roundTrip", config, serializer);
+        assertEquals(config, configManager.loadConfig("roundTrip", ConfigUtilTestConfig.class, serializer));
+
+        //the streamed config should be readable by the non-streaming path
+        SortedSet<Long> versions = new TreeSet<Long>(configManager.getMigrationSource().loadConfigMigrations().keySet());
+        ConfigData configData = configManager.getConfigSource().loadConfiguration("roundTrip", versions);
+        assertEquals(config, serializer.deserialize(configData.getSerializedConfig(), ConfigUtilTestConfig.class));
+        assertEquals(config, configManager.loadConfig("roundTrip", ConfigUtilTestConfig.class, new FileSource(new File(url.toURI())), serializer));
+    }
+
+    @XStreamAlias("aliased")
+    private static class AliasedConfig {
+        private String value = "value";
+    }
+}
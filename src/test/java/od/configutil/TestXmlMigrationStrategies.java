@@ -0,0 +1,166 @@
+package od.configutil;
+
+import junit.framework.TestCase;
+import od.configutil.migration.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Tests for the XML based migration strategies
+ */
+public class TestXmlMigrationStrategies extends TestCase {
+
+    private static final String NON_ASCII_VALUE = "Caf\u00e9 \u20ac \u4e2d";
+    private static final String CONFIG = "<config><name>old</name><description>" + NON_ASCII_VALUE + "</description><obsolete>x</obsolete></config>";
+
+    public void testXPathReplace() {
+        XPathMigrationStrategy strategy = new XPathMigrationStrategy(1, new String[] {"/config/name/text()", "new"});
+        String migrated = strategy.migrate("test", CONFIG);
+        assertTrue(migrated, migrated.contains("<name>new</name>"));
+        assertTrue(migrated, migrated.contains(NON_ASCII_VALUE));
+    }
+
+    public void testXPathRemoveNode() {
+        XPathMigrationStrategy strategy = new XPathMigrationStrategy(1, new String[] {"/config/obsolete", "REMOVE NODE"});
+        String migrated = strategy.migrate("test", CONFIG);
+        assertFalse(migrated, migrated.contains("obsolete"));
+        assertTrue(migrated, migrated.contains("<name>old</name>"));
+    }
+
+    public void testXPathConcurrentMigrations() throws Exception {
+        final XPathMigrationStrategy strategy = new XPathMigrationStrategy(1, new String[] {"/config/name/text()", "new"});
+        final String expected = strategy.migrate("test", CONFIG);
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<String>> results = new ArrayList<Future<String>>();
+            for ( int i = 0; i < 100; i++) {
+                results.add(executor.submit(new Callable<String>() {
+                    public String call() {
+                        return strategy.migrate("test", CONFIG);
+                    }
+                }));
+            }
+            for ( Future<String> f : results) {
+                assertEquals(expected, f.get(30, TimeUnit.SECONDS));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    public void testXslt() throws Exception {
+        XsltMigrationStrategy strategy = new XsltMigrationStrategy(1, new String[] {"/testMigration.xsl"});
+        String migrated = strategy.migrate("test", CONFIG);
+        assertTrue(migrated, migrated.contains("<title>old</title>"));
+        assertTrue(migrated, migrated.contains(NON_ASCII_VALUE));
+
+        //the stylesheet is compiled once and shared
+        assertSame(XslTemplatesRegistry.getTemplates("/testMigration.xsl"), XslTemplatesRegistry.getTemplates("/testMigration.xsl"));
+        assertEquals(migrated, new XsltMigrationStrategy(1, new String[] {"/testMigration.xsl"}).migrate("test", CONFIG));
+    }
+
+    public void testXsltMissingStylesheetLeavesConfigUnchanged() {
+        XsltMigrationStrategy strategy = new XsltMigrationStrategy(1, new String[] {"/missing.xsl"});
+        assertEquals(CONFIG, strategy.migrate("test", CONFIG));
+    }
+
+    public void testConsecutiveXmlMigrationsShareParsedConfig() {
+        SortedMap<Long, List<ConfigMigrationStategy>> migrations = new TreeMap<Long, List<ConfigMigrationStategy>>();
+        migrations.put(1L, Collections.<ConfigMigrationStategy>emptyList());
+        migrations.put(2L, Arrays.<ConfigMigrationStategy>asList(
+            new XPathMigrationStrategy(2, new String[] {"/config/name/text()", "new"}),
+            new XPathMigrationStrategy(2, new String[] {"/config/obsolete", "REMOVE NODE"})
+        ));
+        migrations.put(3L, Arrays.<ConfigMigrationStategy>asList(new XsltMigrationStrategy(3, new String[] {"/testMigration.xsl"})));
+        migrations.put(4L, Arrays.<ConfigMigrationStategy>asList(new RegexMigrationStrategy(4, new String[] {"new", "newer"})));
+
+        String migrated = MigrationPlan.compile(migrations, 1L).migrate("test", CONFIG);
+        assertTrue(migrated, migrated.contains("<title>newer</title>"));
+        assertTrue(migrated, migrated.contains(NON_ASCII_VALUE));
+        assertFalse(migrated, migrated.contains("obsolete"));
+
+        //the fused migrations produce the same xml as running the strategies one by one
+        String separatelyMigrated = CONFIG;
+        for ( List<ConfigMigrationStategy> strategies : migrations.values()) {
+            for ( ConfigMigrationStategy s : strategies) {
+                separatelyMigrated = s.migrate("test", separatelyMigrated);
+            }
+        }
+        assertEquals(normalize(separatelyMigrated), normalize(migrated));
+    }
+
+    public void testFusedXsltMigrationsKeepStylesheetOutputSettings() {
+        String config = "<config xmlns:x=\"urn:extra\"><name>old</name><x:extra x:kind=\"a\">" + NON_ASCII_VALUE + "</x:extra><obsolete>x</obsolete></config>";
+        SortedMap<Long, List<ConfigMigrationStategy>> migrations = new TreeMap<Long, List<ConfigMigrationStategy>>();
+        migrations.put(1L, Collections.<ConfigMigrationStategy>emptyList());
+        //indents its output, so the following stylesheet copies the whitespace between the elements
+        migrations.put(2L, Arrays.<ConfigMigrationStategy>asList(new XsltMigrationStrategy(2, new String[] {"/testMigrationIndented.xsl"})));
+        migrations.put(3L, Arrays.<ConfigMigrationStategy>asList(new XsltMigrationStrategy(3, new String[] {"/testMigration.xsl"})));
+
+        String separatelyMigrated = config;
+        for ( List<ConfigMigrationStategy> strategies : migrations.values()) {
+            for ( ConfigMigrationStategy s : strategies) {
+                separatelyMigrated = s.migrate("test", separatelyMigrated);
+            }
+        }
+        assertEquals(
+            "<?xml version=\"1.0\" encoding=\"UTF-8\"?><config xmlns:x=\"urn:extra\">\n" +
+            "    <title>old</title>\n" +
+            "    <x:extra x:kind=\"a\">" + NON_ASCII_VALUE + "</x:extra>\n" +
+            "</config>",
+            separatelyMigrated
+        );
+        assertEquals(separatelyMigrated, MigrationPlan.compile(migrations, 1L).migrate("test", config));
+
+        //the last stylesheet in a run writes the config, rather than the config being indented after the run
+        migrations.put(2L, Arrays.<ConfigMigrationStategy>asList(new XPathMigrationStrategy(2, new String[] {"/config/name/text()", "new"})));
+        assertEquals(
+            "<?xml version=\"1.0\" encoding=\"UTF-8\"?><config xmlns:x=\"urn:extra\"><title>new</title><x:extra x:kind=\"a\">" +
+                NON_ASCII_VALUE + "</x:extra><obsolete>x</obsolete></config>",
+            MigrationPlan.compile(migrations, 1L).migrate("test", config)
+        );
+    }
+
+    public void testStaxRules() {
+        String config = "<config><name type=\"a\" cache=\"true\">old</name><list><name type=\"b\">x<sub/></name></list><obsolete><child/></obsolete></config>";
+        StaxMigrationStrategy strategy = new StaxMigrationStrategy(1, new String[] {
+            "renameElement /config/name title",
+            "replaceText list/name new value",
+            "removeElement obsolete",
+            "renameAttribute */@type kind",
+            "removeAttribute /config/name/@cache",
+            "replaceAttribute list/name/@type c"
+        });
+        assertEquals(
+            "<config><title kind=\"a\">old</title><list><name kind=\"c\">new value</name></list></config>",
+            normalize(strategy.migrate("test", config))
+        );
+    }
+
+    public void testStaxInvalidRule() {
+        try {
+            new StaxMigrationStrategy(1, new String[] {"removeAttribute /config/name"});
+            fail("Attribute rule requires an attribute path");
+        } catch (IllegalArgumentException e) {
+        }
+    }
+
+    public void testConsecutiveStaxMigrationsAreChained() {
+        SortedMap<Long, List<ConfigMigrationStategy>> migrations = new TreeMap<Long, List<ConfigMigrationStategy>>();
+        migrations.put(1L, Collections.<ConfigMigrationStategy>emptyList());
+        migrations.put(2L, Arrays.<ConfigMigrationStategy>asList(new StaxMigrationStrategy(2, new String[] {"renameElement /config/name title"})));
+        //rules match the element names in the config as migrated by the previous strategy
+        migrations.put(3L, Arrays.<ConfigMigrationStategy>asList(new StaxMigrationStrategy(3, new String[] {"replaceText /config/title new"})));
+
+        String migrated = MigrationPlan.compile(migrations, 1L).migrate("test", CONFIG);
+        assertTrue(migrated, migrated.contains("<title>new</title>"));
+        assertTrue(migrated, migrated.contains(NON_ASCII_VALUE));
+    }
+
+    //remove the declaration and whitespace between elements, which may differ depending on how the xml was written
+    private String normalize(String xml) {
+        return xml.replaceAll("<\\?xml[^>]*>", "").replaceAll(">\\s+<", "><").trim();
+    }
+}